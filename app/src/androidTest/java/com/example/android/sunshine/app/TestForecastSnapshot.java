@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestForecastSnapshot extends AndroidTestCase {
+
+    private static final long TEST_START_DATE = 1419033600000L;  // December 20th, 2014
+    private static final int FORECAST_DAYS = 14;
+
+    /*
+        A regular sync moves the forecast forward by a day and usually revises a few days.  Only
+        the new day, the revised days and the days whose label moved ("Tomorrow" becoming
+        "Today", "Wednesday" becoming "Tomorrow", and the date becoming a day name a week out)
+        should be rebound, instead of the whole list.
+     */
+    public void testDailySyncRebindsOnlyChangedRows() {
+        ForecastSnapshot oldSnapshot = createSnapshot(0, FORECAST_DAYS, -1);
+        ForecastSnapshot newSnapshot = createSnapshot(1, FORECAST_DAYS, 5);
+
+        RecordingCallback callback = new RecordingCallback(oldSnapshot);
+        ForecastSnapshot.dispatchDiff(oldSnapshot, newSnapshot, callback);
+
+        assertEquals("Error: Unexpected change events",
+                "removed(0,1) changed(0,2,4) changed(4,1,2) changed(6,1,4) inserted(13,1) ",
+                callback.mEvents.toString());
+        assertEquals("Error: Diff should rebind the changed, relabeled and inserted rows only",
+                5, callback.mBindCount);
+        assertTrue("Error: Diff should rebind fewer rows than a full refresh",
+                callback.mBindCount < newSnapshot.getCount());
+        assertDates(newSnapshot, callback.mDates);
+    }
+
+    public void testIdenticalSnapshotsDispatchNothing() {
+        ForecastSnapshot oldSnapshot = createSnapshot(0, FORECAST_DAYS, -1);
+        ForecastSnapshot newSnapshot = createSnapshot(0, FORECAST_DAYS, -1);
+
+        RecordingCallback callback = new RecordingCallback(oldSnapshot);
+        ForecastSnapshot.dispatchDiff(oldSnapshot, newSnapshot, callback);
+
+        assertEquals("Error: Identical snapshots shouldn't dispatch any event",
+                "", callback.mEvents.toString());
+    }
+
+    /*
+        The same forecast reloaded after midnight has the same values, but the labels of the
+        days around today and a week out moved.
+     */
+    public void testDayChangeRebindsRelabeledRows() {
+        ForecastSnapshot oldSnapshot = createSnapshot(0, FORECAST_DAYS, -1, -1, 0);
+        ForecastSnapshot newSnapshot = createSnapshot(0, FORECAST_DAYS, -1, -1, 1);
+
+        RecordingCallback callback = new RecordingCallback(oldSnapshot);
+        ForecastSnapshot.dispatchDiff(oldSnapshot, newSnapshot, callback);
+
+        // Yesterday, today and tomorrow, and the day that is now 6 days out.
+        assertEquals("Error: Only the relabeled rows should be rebound",
+                "changed(0,3,4) changed(7,1,4) ", callback.mEvents.toString());
+        assertDates(newSnapshot, callback.mDates);
+    }
+
+    public void testDayLabelForms() {
+        assertEquals("Error: Today has its own label", 0, ForecastSnapshot.getDayLabelForm(0));
+        assertEquals("Error: Tomorrow has its own label", 1, ForecastSnapshot.getDayLabelForm(1));
+        assertEquals("Error: Past days are labeled with their name",
+                ForecastSnapshot.getDayLabelForm(2), ForecastSnapshot.getDayLabelForm(-1));
+        assertEquals("Error: Days of this week are labeled with their name",
+                ForecastSnapshot.getDayLabelForm(2), ForecastSnapshot.getDayLabelForm(6));
+        assertFalse("Error: Days after this week are labeled with their date",
+                ForecastSnapshot.getDayLabelForm(6) == ForecastSnapshot.getDayLabelForm(7));
+    }
+
+    public void testRangesAreCoalesced() {
+        ForecastSnapshot oldSnapshot = createSnapshot(0, 7, -1);
+        ForecastSnapshot newSnapshot = createSnapshot(3, 7, -1);
+
+        RecordingCallback callback = new RecordingCallback(oldSnapshot);
+        ForecastSnapshot.dispatchDiff(oldSnapshot, newSnapshot, callback);
+
+        assertEquals("Error: Consecutive events should be coalesced into ranges",
+                "removed(0,3) inserted(4,3) ", callback.mEvents.toString());
+        assertDates(newSnapshot, callback.mDates);
+    }
+
+    public void testChangeFlags() {
+        ForecastSnapshot oldSnapshot = createSnapshot(0, FORECAST_DAYS, -1);
+        ForecastSnapshot newSnapshot = createSnapshot(0, FORECAST_DAYS, 3, 4);
+
+        assertEquals("Error: Only the temperature of day 3 changed",
+                ForecastSnapshot.CHANGED_TEMPERATURE, oldSnapshot.getChanges(3, newSnapshot, 3));
+        assertEquals("Error: Only the condition of day 4 changed",
+                ForecastSnapshot.CHANGED_CONDITION, oldSnapshot.getChanges(4, newSnapshot, 4));
+        assertEquals("Error: Day 5 didn't change", 0, oldSnapshot.getChanges(5, newSnapshot, 5));
+
+        RecordingCallback callback = new RecordingCallback(oldSnapshot);
+        ForecastSnapshot.dispatchDiff(oldSnapshot, newSnapshot, callback);
+        assertEquals("Error: Changes with different flags shouldn't be coalesced",
+                "changed(3,1,2) changed(4,1,1) ", callback.mEvents.toString());
+    }
+
+    public void testStableIds() {
+        ForecastSnapshot oldSnapshot = createSnapshot(0, FORECAST_DAYS, -1);
+        ForecastSnapshot newSnapshot = createSnapshot(1, FORECAST_DAYS, 5);
+
+        for (int i = 1; i < FORECAST_DAYS; i++) {
+            assertEquals("Error: A day should keep its id across syncs",
+                    oldSnapshot.getId(i), newSnapshot.getId(i - 1));
+            assertFalse("Error: Different days should have different ids",
+                    oldSnapshot.getId(i - 1) == oldSnapshot.getId(i));
+        }
+        assertFalse("Error: The same day of different locations should have different ids",
+                ForecastSnapshot.getStableId("99705", TEST_START_DATE)
+                        == ForecastSnapshot.getStableId("94043", TEST_START_DATE));
+    }
+
+    public void testGetPosition() {
+        ForecastSnapshot snapshot = createSnapshot(0, FORECAST_DAYS, -1);
+        for (int i = 0; i < FORECAST_DAYS; i++) {
+            assertEquals("Error: Date lookup returned the wrong position",
+                    i, snapshot.getPosition(snapshot.getDate(i)));
+        }
+        assertEquals("Error: A date before the forecast shouldn't be found",
+                -1, snapshot.getPosition(TEST_START_DATE - DateUtils.DAY_IN_MILLIS));
+        assertEquals("Error: A date after the forecast shouldn't be found",
+                -1, snapshot.getPosition(TEST_START_DATE + FORECAST_DAYS * DateUtils.DAY_IN_MILLIS));
+        assertEquals("Error: A date that isn't normalized shouldn't be found",
+                -1, snapshot.getPosition(TEST_START_DATE + 1));
+    }
+
+    public void testEmptySnapshots() {
+        ForecastSnapshot empty = createSnapshot(0, 0, -1);
+        ForecastSnapshot full = createSnapshot(0, FORECAST_DAYS, -1);
+
+        RecordingCallback callback = new RecordingCallback(empty);
+        ForecastSnapshot.dispatchDiff(empty, full, callback);
+        assertEquals("inserted(0,14) ", callback.mEvents.toString());
+        assertDates(full, callback.mDates);
+
+        callback = new RecordingCallback(full);
+        ForecastSnapshot.dispatchDiff(full, empty, callback);
+        assertEquals("removed(0,14) ", callback.mEvents.toString());
+        assertDates(empty, callback.mDates);
+    }
+
+    static ForecastSnapshot createSnapshot(int firstDay, int count, int changedDay) {
+        return createSnapshot(firstDay, count, changedDay, -1);
+    }
+
+    /*
+        Creates a snapshot of consecutive days starting firstDay days after the test start date.
+        The temperatures of changedDay and the condition of changedConditionDay (absolute day
+        numbers, or -1) differ from the others.
+     */
+    static ForecastSnapshot createSnapshot(int firstDay, int count, int changedDay,
+                                           int changedConditionDay) {
+        return createSnapshot(firstDay, count, changedDay, changedConditionDay, firstDay);
+    }
+
+    /*
+        Same as above, for a snapshot built on the given day, relative to the test start date.
+     */
+    static ForecastSnapshot createSnapshot(int firstDay, int count, int changedDay,
+                                           int changedConditionDay, int today) {
+        long[] dates = new long[count];
+        int[] weatherIds = new int[count];
+        double[] highs = new double[count];
+        double[] lows = new double[count];
+        for (int i = 0; i < count; i++) {
+            int day = firstDay + i;
+            dates[i] = TEST_START_DATE + day * DateUtils.DAY_IN_MILLIS;
+            weatherIds[i] = day == changedConditionDay ? 500 : 800;
+            highs[i] = day == changedDay ? 30 : 20;
+            lows[i] = 10;
+        }
+        int todayJulianDay = ForecastSnapshot.toJulianDay(
+                TEST_START_DATE + today * DateUtils.DAY_IN_MILLIS);
+        return new ForecastSnapshot("99705", 64.7488, -147.353, 0, todayJulianDay,
+                dates, weatherIds, highs, lows);
+    }
+
+    static void assertDates(ForecastSnapshot expected, List<Long> actual) {
+        assertEquals("Error: Applying the events should yield the new snapshot's size",
+                expected.getCount(), actual.size());
+        for (int i = 0; i < expected.getCount(); i++) {
+            long date = actual.get(i);
+            assertTrue("Error: Applying the events should yield the new snapshot's dates",
+                    date == -1 || date == expected.getDate(i));
+        }
+    }
+
+    /*
+        Records the events and applies them to a list of dates, the way a RecyclerView would.
+        Inserted rows are marked with -1.
+     */
+    static class RecordingCallback implements ForecastSnapshot.DiffCallback {
+        final StringBuilder mEvents = new StringBuilder();
+        final List<Long> mDates = new ArrayList<Long>();
+        int mBindCount;
+
+        RecordingCallback(ForecastSnapshot snapshot) {
+            for (int i = 0; i < snapshot.getCount(); i++) {
+                mDates.add(snapshot.getDate(i));
+            }
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            mEvents.append("inserted(").append(position).append(',').append(count).append(") ");
+            for (int i = 0; i < count; i++) {
+                mDates.add(position, -1L);
+            }
+            mBindCount += count;
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            mEvents.append("removed(").append(position).append(',').append(count).append(") ");
+            for (int i = 0; i < count; i++) {
+                mDates.remove(position);
+            }
+        }
+
+        @Override
+        public void onChanged(int position, int count, int changes) {
+            mEvents.append("changed(").append(position).append(',').append(count)
+                    .append(',').append(changes).append(") ");
+            mBindCount += count;
+        }
+    }
+}
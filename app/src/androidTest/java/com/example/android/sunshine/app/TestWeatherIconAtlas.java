@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.test.AndroidTestCase;
+
+public class TestWeatherIconAtlas extends AndroidTestCase {
+
+    /*
+        Every condition class should have its icon and artwork in the atlas, no larger than the
+        size they are displayed at.
+     */
+    public void testEveryConditionClassIsInAtlas() {
+        WeatherIconAtlas atlas = WeatherIconAtlas.getInstance(mContext);
+        int iconSize = mContext.getResources().getDimensionPixelSize(R.dimen.list_icon);
+        int artSize = mContext.getResources().getDimensionPixelSize(R.dimen.today_icon);
+        for (int weatherId : Utility.ART_CLASS_WEATHER_IDS) {
+            Drawable icon = atlas.getIcon(weatherId);
+            assertNotNull("Error: No icon for weather id " + weatherId, icon);
+            assertTrue("Error: Icon too large for weather id " + weatherId,
+                    icon.getIntrinsicWidth() <= iconSize && icon.getIntrinsicHeight() <= iconSize);
+
+            Drawable art = atlas.getArt(weatherId);
+            assertNotNull("Error: No artwork for weather id " + weatherId, art);
+            assertTrue("Error: Artwork too large for weather id " + weatherId,
+                    art.getIntrinsicWidth() <= artSize && art.getIntrinsicHeight() <= artSize);
+        }
+    }
+
+    public void testConditionsOfAClassShareTheirIcon() {
+        WeatherIconAtlas atlas = WeatherIconAtlas.getInstance(mContext);
+        // 501 (moderate rain) and 520 (light shower rain) both use the rain artwork.
+        Rect moderateRain = getRegion(atlas.getIcon(501));
+        Rect showerRain = getRegion(atlas.getIcon(520));
+        assertEquals("Error: Conditions of a class should share their icon's region",
+                moderateRain, showerRain);
+        assertEquals("Error: Conditions of a class should share their artwork's region",
+                getRegion(atlas.getArt(501)), getRegion(atlas.getArt(520)));
+
+        // Every class has its own region.
+        for (int i = 0; i < Utility.ART_CLASS_WEATHER_IDS.length; i++) {
+            for (int j = i + 1; j < Utility.ART_CLASS_WEATHER_IDS.length; j++) {
+                int first = Utility.ART_CLASS_WEATHER_IDS[i];
+                int second = Utility.ART_CLASS_WEATHER_IDS[j];
+                assertFalse("Error: Weather ids " + first + " and " + second
+                                + " shouldn't share their icon's region",
+                        getRegion(atlas.getIcon(first)).equals(getRegion(atlas.getIcon(second))));
+                assertFalse("Error: Weather ids " + first + " and " + second
+                                + " shouldn't share their artwork's region",
+                        getRegion(atlas.getArt(first)).equals(getRegion(atlas.getArt(second))));
+            }
+        }
+    }
+
+    public void testUnknownConditionHasNoIcon() {
+        WeatherIconAtlas atlas = WeatherIconAtlas.getInstance(mContext);
+        assertNull("Error: Unknown condition shouldn't have an icon", atlas.getIcon(0));
+        assertNull("Error: Unknown condition shouldn't have artwork", atlas.getArt(0));
+    }
+
+    private static Rect getRegion(Drawable drawable) {
+        assertTrue("Error: Atlas drawables should draw a region of the atlas",
+                drawable instanceof WeatherIconAtlas.RegionDrawable);
+        return ((WeatherIconAtlas.RegionDrawable) drawable).getRegion();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+
+import com.example.android.sunshine.app.WeatherDisplayModel;
+
+import java.nio.ByteBuffer;
+
+public class TestWearWeatherPublisher extends AndroidTestCase {
+
+    private static final long TEST_START_DATE = 1419033600000L;  // December 20th, 2014
+
+    // High, low and weather id of the upcoming days, including temperatures below zero.
+    private static final double[] HIGHS = {21.7, 3.2, -1.5, 35.9};
+    private static final double[] LOWS = {12.1, -4.8, -12.6, 24.0};
+    private static final int[] WEATHER_IDS = {800, 501, 600, 211};
+
+    /*
+        The watch face reads the upcoming days as the dates, followed by the high, low and
+        weather id of each day as shorts, in the units of the database.
+     */
+    public void testForecastRoundTrip() {
+        WeatherDisplayModel.Row[] days = createDays();
+
+        long[] dates = WearWeatherPublisher.getForecastDates(days);
+        byte[] forecast = WearWeatherPublisher.packForecast(days);
+        assertEquals("Error: There should be a date for each day", days.length, dates.length);
+        assertEquals("Error: Each day should be packed in 6 bytes",
+                days.length * 6, forecast.length);
+
+        ByteBuffer buffer = ByteBuffer.wrap(forecast);
+        for (int i = 0; i < days.length; i++) {
+            assertEquals("Error: Wrong date for day " + i, days[i].date, dates[i]);
+            assertEquals("Error: Wrong high for day " + i, (short) HIGHS[i], buffer.getShort());
+            assertEquals("Error: Wrong low for day " + i, (short) LOWS[i], buffer.getShort());
+            assertEquals("Error: Wrong weather id for day " + i,
+                    WEATHER_IDS[i], buffer.getShort());
+        }
+        assertEquals("Error: The forecast shouldn't have trailing bytes", 0, buffer.remaining());
+    }
+
+    public void testNoUpcomingDays() {
+        WeatherDisplayModel.Row[] days = new WeatherDisplayModel.Row[0];
+        assertEquals("Error: No day should have no dates",
+                0, WearWeatherPublisher.getForecastDates(days).length);
+        assertEquals("Error: No day should have an empty forecast",
+                0, WearWeatherPublisher.packForecast(days).length);
+    }
+
+    private WeatherDisplayModel.Row[] createDays() {
+        WeatherDisplayModel displayModel = WeatherDisplayModel.getInstance(mContext);
+        WeatherDisplayModel.Row[] days = new WeatherDisplayModel.Row[HIGHS.length];
+        for (int i = 0; i < days.length; i++) {
+            days[i] = displayModel.getRow(TEST_START_DATE + (i + 1) * DateUtils.DAY_IN_MILLIS,
+                    WEATHER_IDS[i], HIGHS[i], LOWS[i]);
+        }
+        return days;
+    }
+}
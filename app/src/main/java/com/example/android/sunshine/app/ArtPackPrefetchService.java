@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.app.IntentService;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.target.Target;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * IntentService which fetches every artwork of the selected art pack ahead of time, so that the
+ * list, the detail view, the widgets and the notification don't each go to the network the first
+ * time they show a condition.
+ *
+ * The original images are stored in Glide's disk cache, which the image views load from, and
+ * the bitmaps decoded at the sizes of the widgets, the notification and the wearable are kept
+ * in {@link WeatherArtCache}.  The art pack that was prefetched is recorded in the preferences,
+ * and {@link #ACTION_ART_PACK_PREFETCHED} is broadcast when done.
+ */
+public class ArtPackPrefetchService extends IntentService {
+    private static final String LOG_TAG = ArtPackPrefetchService.class.getSimpleName();
+
+    public static final String ACTION_ART_PACK_PREFETCHED =
+            "com.example.android.sunshine.app.ACTION_ART_PACK_PREFETCHED";
+
+    // Number of artworks fetched concurrently.
+    private static final int PREFETCH_THREADS = 3;
+
+    public ArtPackPrefetchService() {
+        super("ArtPackPrefetchService");
+    }
+
+    /**
+     * Starts prefetching the selected art pack, unless it already was.
+     */
+    public static void prefetchIfNeeded(Context context) {
+        if (!isPrefetched(context)) {
+            context.startService(new Intent(context, ArtPackPrefetchService.class));
+        }
+    }
+
+    private static boolean isPrefetched(Context context) {
+        // The bundled artwork is used for the Sunshine art pack
+        if (Utility.usingLocalGraphics(context)) {
+            return true;
+        }
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        return getArtPack(context).equals(
+                prefs.getString(context.getString(R.string.pref_art_pack_prefetched_key), null));
+    }
+
+    private static String getArtPack(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        return prefs.getString(context.getString(R.string.pref_art_pack_key),
+                context.getString(R.string.pref_art_pack_sunshine));
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        // Requests pile up when the art pack is switched back and forth
+        if (isPrefetched(this)) {
+            return;
+        }
+        String artPack = getArtPack(this);
+        long startMillis = SystemClock.elapsedRealtime();
+
+        // The sizes at which the artwork is decoded as a Bitmap: the Detail widget icon, and the
+        // large icon shared by the notification and the wearable.
+        int listIconSize = getResources().getDimensionPixelSize(R.dimen.list_icon);
+        int[][] bitmapSizes = {
+                {listIconSize, listIconSize},
+                {TodaySnapshot.getLargeIconWidth(this), TodaySnapshot.getLargeIconHeight(this)}
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(PREFETCH_THREADS);
+        List<Future<Boolean>> fetches = new ArrayList<Future<Boolean>>();
+        for (int weatherId : Utility.ART_CLASS_WEATHER_IDS) {
+            fetches.add(executor.submit(new ArtFetch(weatherId, bitmapSizes)));
+        }
+        int fetched = 0;
+        boolean interrupted = false;
+        for (Future<Boolean> fetch : fetches) {
+            try {
+                if (fetch.get()) {
+                    fetched++;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+                break;
+            } catch (ExecutionException e) {
+                Log.e(LOG_TAG, "Error prefetching art", e);
+            }
+        }
+        executor.shutdownNow();
+        Log.d(LOG_TAG, "Prefetched " + fetched + " of " + fetches.size() + " artworks of "
+                + artPack + " in " + (SystemClock.elapsedRealtime() - startMillis) + "ms");
+
+        // Only remember the art pack if all of it is cached, so that a failed prefetch is retried,
+        // and if it is still selected.
+        if (!interrupted && fetched == fetches.size() && artPack.equals(getArtPack(this))) {
+            PreferenceManager.getDefaultSharedPreferences(this).edit()
+                    .putString(getString(R.string.pref_art_pack_prefetched_key), artPack)
+                    .apply();
+        }
+
+        // Setting the package ensures that only components in our app will receive the broadcast
+        sendBroadcast(new Intent(ACTION_ART_PACK_PREFETCHED).setPackage(getPackageName()));
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Fetches the artwork of one condition class into the disk cache, then decodes it at each
+     * size into {@link WeatherArtCache}.
+     */
+    private class ArtFetch implements Callable<Boolean> {
+        private final int mWeatherId;
+        private final int[][] mBitmapSizes;
+
+        ArtFetch(int weatherId, int[][] bitmapSizes) {
+            mWeatherId = weatherId;
+            mBitmapSizes = bitmapSizes;
+        }
+
+        @Override
+        public Boolean call() throws Exception {
+            Context context = ArtPackPrefetchService.this;
+            String artUrl = Utility.getArtUrlForWeatherCondition(context, mWeatherId);
+            if (null == artUrl) {
+                return false;
+            }
+            // The image views decode the original image at their own size, from the disk cache
+            Glide.with(context)
+                    .load(artUrl)
+                    .downloadOnly(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL)
+                    .get();
+            WeatherArtCache artCache = WeatherArtCache.getInstance(context);
+            for (int[] size : mBitmapSizes) {
+                if (null == artCache.getRemoteArt(mWeatherId, size[0], size[1])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
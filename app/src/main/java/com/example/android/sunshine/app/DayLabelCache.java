@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.text.format.Time;
+import android.util.SparseArray;
+
+import java.text.SimpleDateFormat;
+
+/**
+ * Caches the user-facing labels for a day ("Today, June 24", "Tomorrow", "Mon Jun 8", ...)
+ * keyed by Julian day.  Building these labels needs {@link Time} objects and
+ * {@link SimpleDateFormat}s, which adds up quickly when the forecast list rebinds while
+ * scrolling.
+ *
+ * The labels are relative to the current day, so the cache is dropped at local midnight and
+ * whenever the time zone, clock or locale changes.
+ */
+public class DayLabelCache {
+
+    private static DayLabelCache sInstance;
+
+    private final Context mContext;
+
+    private final SparseArray<String> mFriendlyLongToday = new SparseArray<String>();
+    private final SparseArray<String> mFriendly = new SparseArray<String>();
+    private final SparseArray<String> mFullFriendly = new SparseArray<String>();
+    private final SparseArray<String> mDayNames = new SparseArray<String>();
+    private final SparseArray<String> mMonthDays = new SparseArray<String>();
+
+    // Offset from GMT in seconds, and the current Julian day, as of the last invalidation.
+    private long mGmtOffset;
+    private int mCurrentJulianDay;
+    // Labels are valid until this point in time (the next local midnight).
+    private long mValidUntilMillis;
+
+    private SimpleDateFormat mShortenedDateFormat;
+    private SimpleDateFormat mDayFormat;
+    private SimpleDateFormat mMonthDayFormat;
+
+    /**
+     * Drops the cached labels when the day they are relative to may have changed.
+     */
+    private final BroadcastReceiver mInvalidationReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            invalidate();
+        }
+    };
+
+    public static synchronized DayLabelCache getInstance(Context context) {
+        if (null == sInstance) {
+            sInstance = new DayLabelCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private DayLabelCache(Context context) {
+        mContext = context;
+        IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+        filter.addAction(Intent.ACTION_TIME_CHANGED);
+        filter.addAction(Intent.ACTION_DATE_CHANGED);
+        filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+        mContext.registerReceiver(mInvalidationReceiver, filter);
+    }
+
+    /**
+     * Clears every cached label.  The formatters are rebuilt as well, in case the locale changed.
+     */
+    public synchronized void invalidate() {
+        mFriendlyLongToday.clear();
+        mFriendly.clear();
+        mFullFriendly.clear();
+        mDayNames.clear();
+        mMonthDays.clear();
+        mShortenedDateFormat = null;
+        mDayFormat = null;
+        mMonthDayFormat = null;
+        mValidUntilMillis = 0;
+    }
+
+    /**
+     * Cached version of {@link Utility#getFriendlyDayString(Context, long, boolean)}.
+     */
+    public synchronized String getFriendlyDayString(long dateInMillis, boolean displayLongToday) {
+        int julianDay = toJulianDay(dateInMillis);
+        SparseArray<String> labels = displayLongToday ? mFriendlyLongToday : mFriendly;
+        String label = labels.get(julianDay);
+        if (null == label) {
+            label = buildFriendlyDayString(dateInMillis, julianDay, displayLongToday);
+            labels.put(julianDay, label);
+        }
+        return label;
+    }
+
+    /**
+     * Cached version of {@link Utility#getFullFriendlyDayString(Context, long)}.
+     */
+    public synchronized String getFullFriendlyDayString(long dateInMillis) {
+        int julianDay = toJulianDay(dateInMillis);
+        String label = mFullFriendly.get(julianDay);
+        if (null == label) {
+            label = mContext.getString(R.string.format_full_friendly_date,
+                    getDayName(dateInMillis),
+                    getFormattedMonthDay(dateInMillis));
+            mFullFriendly.put(julianDay, label);
+        }
+        return label;
+    }
+
+    /**
+     * Cached version of {@link Utility#getDayName(Context, long)}.
+     */
+    public synchronized String getDayName(long dateInMillis) {
+        int julianDay = toJulianDay(dateInMillis);
+        String label = mDayNames.get(julianDay);
+        if (null == label) {
+            if (julianDay == mCurrentJulianDay) {
+                label = mContext.getString(R.string.today);
+            } else if (julianDay == mCurrentJulianDay + 1) {
+                label = mContext.getString(R.string.tomorrow);
+            } else {
+                // Otherwise, the format is just the day of the week (e.g "Wednesday").
+                if (null == mDayFormat) {
+                    mDayFormat = new SimpleDateFormat("EEEE");
+                }
+                label = mDayFormat.format(dateInMillis);
+            }
+            mDayNames.put(julianDay, label);
+        }
+        return label;
+    }
+
+    /**
+     * Cached version of {@link Utility#getFormattedMonthDay(Context, long)}.
+     */
+    public synchronized String getFormattedMonthDay(long dateInMillis) {
+        int julianDay = toJulianDay(dateInMillis);
+        String label = mMonthDays.get(julianDay);
+        if (null == label) {
+            if (null == mMonthDayFormat) {
+                mMonthDayFormat = new SimpleDateFormat("MMMM dd");
+            }
+            label = mMonthDayFormat.format(dateInMillis);
+            mMonthDays.put(julianDay, label);
+        }
+        return label;
+    }
+
+    private String buildFriendlyDayString(long dateInMillis, int julianDay,
+                                          boolean displayLongToday) {
+        // The day string for forecast uses the following logic:
+        // For today: "Today, June 8"
+        // For tomorrow:  "Tomorrow"
+        // For the next 5 days: "Wednesday" (just the day name)
+        // For all days after that: "Mon Jun 8"
+        if (displayLongToday && julianDay == mCurrentJulianDay) {
+            return mContext.getString(R.string.format_full_friendly_date,
+                    mContext.getString(R.string.today),
+                    getFormattedMonthDay(dateInMillis));
+        } else if (julianDay < mCurrentJulianDay + 7) {
+            // If the input date is less than a week in the future, just return the day name.
+            return getDayName(dateInMillis);
+        } else {
+            // Otherwise, use the form "Mon Jun 3"
+            if (null == mShortenedDateFormat) {
+                mShortenedDateFormat = new SimpleDateFormat("EEE MMM dd");
+            }
+            return mShortenedDateFormat.format(dateInMillis);
+        }
+    }
+
+    /**
+     * Converts the given date to a Julian day, first dropping the cache if the day it was built
+     * for is over.  Must be called with the lock held.
+     */
+    private int toJulianDay(long dateInMillis) {
+        long now = System.currentTimeMillis();
+        if (now >= mValidUntilMillis) {
+            if (mValidUntilMillis != 0) {
+                invalidate();
+            }
+            Time time = new Time();
+            time.set(now);
+            mGmtOffset = time.gmtoff;
+            mCurrentJulianDay = Time.getJulianDay(now, mGmtOffset);
+
+            // Labels stay valid until the next local midnight.
+            time.hour = 0;
+            time.minute = 0;
+            time.second = 0;
+            time.monthDay++;
+            mValidUntilMillis = time.normalize(true);
+        }
+        return Time.getJulianDay(dateInMillis, mGmtOffset);
+    }
+}
@@ -17,6 +17,7 @@ package com.example.android.sunshine.app;
 
 import android.content.Intent;
 import android.database.Cursor;
+import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
@@ -38,6 +39,7 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
@@ -153,6 +155,7 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
 
     @Override
     public void onActivityCreated(Bundle savedInstanceState) {
+        WeatherIconAtlas.getInstance(getActivity()).warmAsync();
         getLoaderManager().initLoader(DETAIL_LOADER, null, this);
         super.onActivityCreated(savedInstanceState);
     }
@@ -197,49 +200,55 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
                 ((View)vp).setVisibility(View.VISIBLE);
             }
 
-            // Read weather condition ID from cursor
-            int weatherId = data.getInt(COL_WEATHER_CONDITION_ID);
-
-            if ( Utility.usingLocalGraphics(getActivity()) ) {
-                mIconView.setImageResource(Utility.getArtResourceForWeatherCondition(weatherId));
+            // Read date, weather condition and temperatures from cursor
+            long date = data.getLong(COL_WEATHER_DATE);
+            double high = data.getDouble(COL_WEATHER_MAX_TEMP);
+            double low = data.getDouble(COL_WEATHER_MIN_TEMP);
+            WeatherDisplayModel.Row row = WeatherDisplayModel.getInstance(getActivity())
+                    .getRow(date, data.getInt(COL_WEATHER_CONDITION_ID), high, low);
+            WeatherDisplayModel.Condition condition = row.condition;
+
+            if ( null == condition.artUrl ) {
+                // Opened cold, from a widget or a notification, the atlas may not be built yet,
+                // and building it here would decode every graphic on the main thread.
+                WeatherIconAtlas atlas = WeatherIconAtlas.getInstance(getActivity());
+                Drawable art = atlas.isBuilt() ? atlas.getArt(condition.weatherId) : null;
+                if (null != art) {
+                    mIconView.setImageDrawable(art);
+                } else {
+                    mIconView.setImageResource(condition.artResourceId);
+                }
             } else {
                 // Use weather art image
                 Glide.with(this)
-                        .load(Utility.getArtUrlForWeatherCondition(getActivity(), weatherId))
-                        .error(Utility.getArtResourceForWeatherCondition(weatherId))
+                        .load(condition.artUrl)
+                        .diskCacheStrategy(DiskCacheStrategy.ALL)
+                        .error(condition.artResourceId)
                         .crossFade()
                         .into(mIconView);
             }
 
-            // Read date from cursor and update views for day of week and date
-            long date = data.getLong(COL_WEATHER_DATE);
-            String dateText = Utility.getFullFriendlyDayString(getActivity(),date);
+            // Update views for day of week and date
+            String dateText = DayLabelCache.getInstance(getActivity()).getFullFriendlyDayString(date);
             mDateView.setText(dateText);
 
             // Get description from weather condition ID
-            String description = Utility.getStringForWeatherCondition(getActivity(), weatherId);
+            String description = condition.description;
             mDescriptionView.setText(description);
-            mDescriptionView.setContentDescription(getString(R.string.a11y_forecast, description));
+            mDescriptionView.setContentDescription(condition.descriptionA11y);
 
             // For accessibility, add a content description to the icon field. Because the ImageView
             // is independently focusable, it's better to have a description of the image. Using
             // null is appropriate when the image is purely decorative or when the image already
             // has text describing it in the same UI component.
-            mIconView.setContentDescription(getString(R.string.a11y_forecast_icon, description));
-
-            // Read high temperature from cursor and update view
-            boolean isMetric = Utility.isMetric(getActivity());
+            mIconView.setContentDescription(condition.iconA11y);
 
-            double high = data.getDouble(COL_WEATHER_MAX_TEMP);
-            String highString = Utility.formatTemperature(getActivity(), high);
-            mHighTempView.setText(highString);
-            mHighTempView.setContentDescription(getString(R.string.a11y_high_temp, highString));
+            // Update the temperature views
+            mHighTempView.setText(row.highString);
+            mHighTempView.setContentDescription(row.highA11y);
 
-            // Read low temperature from cursor and update view
-            double low = data.getDouble(COL_WEATHER_MIN_TEMP);
-            String lowString = Utility.formatTemperature(getActivity(), low);
-            mLowTempView.setText(lowString);
-            mLowTempView.setContentDescription(getString(R.string.a11y_low_temp, lowString));
+            mLowTempView.setText(row.lowString);
+            mLowTempView.setContentDescription(row.lowA11y);
 
             // Read humidity from cursor and update view
             float humidity = data.getFloat(COL_WEATHER_HUMIDITY);
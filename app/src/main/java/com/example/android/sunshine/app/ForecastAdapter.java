@@ -16,12 +16,11 @@
 package com.example.android.sunshine.app;
 
 import android.content.Context;
-import android.database.Cursor;
-import android.os.Build;
+import android.graphics.drawable.Drawable;
 import android.os.Bundle;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.RecyclerView;
-import android.util.Log;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -30,25 +29,33 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.data.WeatherContract;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+
+import java.util.List;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
- * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
+ * from a {@link ForecastSnapshot} to a {@link android.support.v7.widget.RecyclerView}.
  */
 public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
 
     private static final int VIEW_TYPE_TODAY = 0;
     private static final int VIEW_TYPE_FUTURE_DAY = 1;
 
+    // Payload for rows where only the temperatures changed.
+    private static final Object PAYLOAD_TEMPERATURE = new Object();
+
     // Flag to determine if we want to use a separate view for "today".
     private boolean mUseTodayLayout = true;
 
-    private Cursor mCursor;
+    private ForecastSnapshot mSnapshot;
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
     final private ItemChoiceManager mICM;
+    final private DayLabelCache mDayLabels;
+    final private WeatherIconAtlas mIconAtlas;
+    final private WeatherDisplayModel mDisplayModel;
 
     /**
      * Cache of the children views for a forecast list item.
@@ -73,9 +80,10 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            if (adapterPosition == RecyclerView.NO_POSITION) {
+                return;
+            }
+            mClickHandler.onClick(mSnapshot.getDate(adapterPosition), this);
             mICM.onClick(this);
         }
     }
@@ -84,10 +92,38 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         void onClick(Long date, ForecastAdapterViewHolder vh);
     }
 
+    /**
+     * Forwards the changes between two snapshots to the attached RecyclerView.
+     */
+    private final ForecastSnapshot.DiffCallback mDiffCallback = new ForecastSnapshot.DiffCallback() {
+        @Override
+        public void onInserted(int position, int count) {
+            notifyItemRangeInserted(position, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            notifyItemRangeRemoved(position, count);
+        }
+
+        @Override
+        public void onChanged(int position, int count, int changes) {
+            // Rows where only the temperatures changed don't need their icon reloaded.
+            notifyItemRangeChanged(position, count,
+                    changes == ForecastSnapshot.CHANGED_TEMPERATURE ? PAYLOAD_TEMPERATURE : null);
+        }
+    };
+
     public ForecastAdapter(Context context, ForecastAdapterOnClickHandler dh, View emptyView, int choiceMode) {
         mContext = context;
         mClickHandler = dh;
         mEmptyView = emptyView;
+        mDayLabels = DayLabelCache.getInstance(context);
+        mIconAtlas = WeatherIconAtlas.getInstance(context);
+        mDisplayModel = WeatherDisplayModel.getInstance(context);
+        // Ids identify a day of the forecast across syncs, which lets the selection follow it.
+        // This must be set before the ItemChoiceManager is created.
+        setHasStableIds(true);
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
     }
@@ -124,67 +160,103 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        long dateInMillis = mSnapshot.getDate(position);
+        WeatherDisplayModel.Row row = getRow(position);
+        WeatherDisplayModel.Condition condition = row.condition;
         int defaultImage;
+        Drawable defaultDrawable;
         boolean useLongToday;
 
         switch (getItemViewType(position)) {
             case VIEW_TYPE_TODAY:
-                defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
+                defaultImage = condition.artResourceId;
+                defaultDrawable = mIconAtlas.getArt(condition.weatherId);
                 useLongToday = true;
                 break;
             default:
-                defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
+                defaultImage = condition.iconResourceId;
+                defaultDrawable = mIconAtlas.getIcon(condition.weatherId);
                 useLongToday = false;
         }
 
-        if ( Utility.usingLocalGraphics(mContext) ) {
-            forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
+        if ( null == condition.artUrl ) {
+            if (null != defaultDrawable) {
+                forecastAdapterViewHolder.mIconView.setImageDrawable(defaultDrawable);
+            } else {
+                forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
+            }
         } else {
+            // Decode from the original image when it was prefetched, see ArtPackPrefetchService
             Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
+                    .load(condition.artUrl)
+                    .diskCacheStrategy(DiskCacheStrategy.ALL)
                     .error(defaultImage)
                     .crossFade()
                     .into(forecastAdapterViewHolder.mIconView);
         }
 
         // this enables better animations. even if we lose state due to a device rotation,
-        // the animator can use this to re-find the original view
-        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
-
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        // the animator can use this to re-find the original view.  The name is based on the date
+        // since rows are no longer all rebound when the list shifts by a day.
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + dateInMillis);
 
         // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
-
-        // Read weather forecast from cursor
-        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
+        forecastAdapterViewHolder.mDateView.setText(mDayLabels.getFriendlyDayString(dateInMillis, useLongToday));
 
         // Find TextView and set weather forecast on it
-        forecastAdapterViewHolder.mDescriptionView.setText(description);
-        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
+        forecastAdapterViewHolder.mDescriptionView.setText(condition.description);
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(condition.descriptionA11y);
 
         // For accessibility, we don't want a content description for the icon field
         // because the information is repeated in the description view and the icon
         // is not individually selectable
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        String highString = Utility.formatTemperature(mContext, high);
-        forecastAdapterViewHolder.mHighTempView.setText(highString);
-        forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
+        bindTemperatures(forecastAdapterViewHolder, row);
 
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        String lowString = Utility.formatTemperature(mContext, low);
-        forecastAdapterViewHolder.mLowTempView.setText(lowString);
-        forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
+        mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+    }
 
+    /**
+     * Only rebinds the views affected by the payloads, when they are all known.
+     */
+    @Override
+    public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position,
+                                 List<Object> payloads) {
+        boolean partialBind = !payloads.isEmpty();
+        boolean temperatureChanged = false;
+        for (Object payload : payloads) {
+            if (payload == PAYLOAD_TEMPERATURE) {
+                temperatureChanged = true;
+            } else if (payload != ItemChoiceManager.PAYLOAD_CHECKED_STATE) {
+                partialBind = false;
+            }
+        }
+        if (!partialBind) {
+            onBindViewHolder(forecastAdapterViewHolder, position);
+            return;
+        }
+        if (temperatureChanged) {
+            bindTemperatures(forecastAdapterViewHolder, getRow(position));
+        }
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
     }
 
+    private WeatherDisplayModel.Row getRow(int position) {
+        return mDisplayModel.getRow(mSnapshot.getDate(position),
+                mSnapshot.getWeatherId(position),
+                mSnapshot.getHigh(position),
+                mSnapshot.getLow(position));
+    }
+
+    private void bindTemperatures(ForecastAdapterViewHolder forecastAdapterViewHolder,
+                                  WeatherDisplayModel.Row row) {
+        forecastAdapterViewHolder.mHighTempView.setText(row.highString);
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(row.highA11y);
+
+        forecastAdapterViewHolder.mLowTempView.setText(row.lowString);
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(row.lowA11y);
+    }
+
     public void onRestoreInstanceState(Bundle savedInstanceState) {
         mICM.onRestoreInstanceState(savedInstanceState);
     }
@@ -206,20 +278,42 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         return (position == 0 && mUseTodayLayout) ? VIEW_TYPE_TODAY : VIEW_TYPE_FUTURE_DAY;
     }
 
+    @Override
+    public long getItemId(int position) {
+        return mSnapshot.getId(position);
+    }
+
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
-        return mCursor.getCount();
+        if ( null == mSnapshot ) return 0;
+        return mSnapshot.getCount();
     }
 
-    public void swapCursor(Cursor newCursor) {
-        mCursor = newCursor;
-        notifyDataSetChanged();
+    /**
+     * Replaces the displayed forecast.  Only the rows that actually differ from the current
+     * snapshot, in their values or in their day label after the day changed, are rebound, unless
+     * the location or the display configuration changed.
+     */
+    public void swapSnapshot(ForecastSnapshot newSnapshot) {
+        ForecastSnapshot oldSnapshot = mSnapshot;
+        mSnapshot = newSnapshot;
+        if ( null == oldSnapshot || null == newSnapshot
+                || !TextUtils.equals(oldSnapshot.getLocationSetting(), newSnapshot.getLocationSetting())
+                || oldSnapshot.getDisplayVersion() != newSnapshot.getDisplayVersion() ) {
+            notifyDataSetChanged();
+        } else {
+            ForecastSnapshot.dispatchDiff(oldSnapshot, newSnapshot, mDiffCallback);
+            // The first row has its own layout, so it must be rebound when another day moves in.
+            if ( mUseTodayLayout && oldSnapshot.getCount() > 0 && newSnapshot.getCount() > 0
+                    && oldSnapshot.getDate(0) != newSnapshot.getDate(0) ) {
+                notifyItemChanged(0);
+            }
+        }
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
-    public Cursor getCursor() {
-        return mCursor;
+    public ForecastSnapshot getSnapshot() {
+        return mSnapshot;
     }
 
     public void selectView(RecyclerView.ViewHolder viewHolder) {
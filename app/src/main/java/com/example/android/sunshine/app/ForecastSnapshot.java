@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.Cursor;
+import android.text.format.Time;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * Immutable copy of the forecast shown by {@link ForecastAdapter}, stored as one primitive array
+ * per column.  It is built by {@link ForecastSnapshotLoader} off the main thread, so binding a
+ * row is a couple of array reads instead of moving a live {@link Cursor} around.
+ *
+ * Snapshots are sorted by date, which lets {@link #dispatchDiff} compute the precise item range
+ * changes between two of them in a single pass.
+ */
+public class ForecastSnapshot {
+
+    // Flags describing how a row changed between two snapshots.
+    public static final int CHANGED_CONDITION = 1;
+    public static final int CHANGED_TEMPERATURE = 2;
+    // The day label is relative to today, so it changes when the snapshots were built on
+    // different days, even if the row's values didn't.
+    public static final int CHANGED_DAY_LABEL = 4;
+
+    /**
+     * Receives the item range changes computed by {@link #dispatchDiff}.  Positions are
+     * relative to the list as already modified by the previous events, which is what
+     * {@link android.support.v7.widget.RecyclerView.Adapter}'s notify methods expect.
+     */
+    public interface DiffCallback {
+        void onInserted(int position, int count);
+
+        void onRemoved(int position, int count);
+
+        /**
+         * @param changes the {@code CHANGED_*} flags shared by every row of the range
+         */
+        void onChanged(int position, int count, int changes);
+    }
+
+    private final String mLocationSetting;
+    private final double mCoordLat;
+    private final double mCoordLong;
+    private final int mDisplayVersion;
+    // The Julian day the snapshot was built on, which the day labels are relative to.
+    private final int mTodayJulianDay;
+
+    private final long[] mIds;
+    private final long[] mDates;
+    private final int[] mWeatherIds;
+    private final double[] mHighs;
+    private final double[] mLows;
+
+    ForecastSnapshot(String locationSetting, double coordLat, double coordLong, int displayVersion,
+                     int todayJulianDay, long[] dates, int[] weatherIds, double[] highs,
+                     double[] lows) {
+        mLocationSetting = locationSetting;
+        mCoordLat = coordLat;
+        mCoordLong = coordLong;
+        mDisplayVersion = displayVersion;
+        mTodayJulianDay = todayJulianDay;
+        mIds = new long[dates.length];
+        for (int i = 0; i < dates.length; i++) {
+            mIds[i] = getStableId(locationSetting, dates[i]);
+        }
+        mDates = dates;
+        mWeatherIds = weatherIds;
+        mHighs = highs;
+        mLows = lows;
+    }
+
+    /**
+     * Copies a cursor using the {@link ForecastFragment} projection, sorted by ascending date.
+     * The cursor is left open.
+     *
+     * @param displayVersion version of the {@link WeatherDisplayModel} the rows were prepared with
+     */
+    public static ForecastSnapshot fromCursor(Cursor cursor, String locationSetting,
+                                              int displayVersion) {
+        int count = cursor.getCount();
+        long[] dates = new long[count];
+        int[] weatherIds = new int[count];
+        double[] highs = new double[count];
+        double[] lows = new double[count];
+        double coordLat = 0;
+        double coordLong = 0;
+        for (int i = 0; i < count && cursor.moveToPosition(i); i++) {
+            dates[i] = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+            weatherIds[i] = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+            highs[i] = cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
+            lows[i] = cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
+            if (i == 0) {
+                coordLat = cursor.getDouble(ForecastFragment.COL_COORD_LAT);
+                coordLong = cursor.getDouble(ForecastFragment.COL_COORD_LONG);
+            }
+        }
+        return new ForecastSnapshot(locationSetting, coordLat, coordLong, displayVersion,
+                toJulianDay(System.currentTimeMillis()), dates, weatherIds, highs, lows);
+    }
+
+    /**
+     * Returns an id identifying the forecast of a location for a given day.  Unlike the row
+     * {@code _ID}, which changes on every sync since rows are replaced, it stays the same across
+     * syncs.
+     */
+    public static long getStableId(String locationSetting, long date) {
+        int julianDay = toJulianDay(date);
+        return ((long) locationSetting.hashCode() << 32) | (julianDay & 0xffffffffL);
+    }
+
+    static int toJulianDay(long date) {
+        return Time.getJulianDay(date, TimeZone.getDefault().getOffset(date) / 1000);
+    }
+
+    /**
+     * Returns which form of {@link DayLabelCache#getFriendlyDayString} labels a day, given how
+     * many days after today it is: today, tomorrow, the day name, or the date.  Two days of the
+     * same form have the same label, unless they are today or tomorrow on different days.
+     */
+    static int getDayLabelForm(int daysFromToday) {
+        if (daysFromToday == 0 || daysFromToday == 1) {
+            return daysFromToday;
+        }
+        return daysFromToday < 7 ? 2 : 3;
+    }
+
+    public int getCount() {
+        return mDates.length;
+    }
+
+    public String getLocationSetting() {
+        return mLocationSetting;
+    }
+
+    public double getCoordLat() {
+        return mCoordLat;
+    }
+
+    public double getCoordLong() {
+        return mCoordLong;
+    }
+
+    public int getDisplayVersion() {
+        return mDisplayVersion;
+    }
+
+    public int getTodayJulianDay() {
+        return mTodayJulianDay;
+    }
+
+    public long getId(int position) {
+        return mIds[position];
+    }
+
+    public long getDate(int position) {
+        return mDates[position];
+    }
+
+    /**
+     * Returns the position of the row for a date, or -1 (the same value as
+     * {@link android.support.v7.widget.RecyclerView#NO_POSITION}) if it isn't part of the
+     * snapshot.  The dates are sorted, so this is a binary search.
+     *
+     * @param date a date normalized with {@code WeatherContract.normalizeDate()}
+     */
+    public int getPosition(long date) {
+        int position = Arrays.binarySearch(mDates, date);
+        return position >= 0 ? position : -1;
+    }
+
+    public int getWeatherId(int position) {
+        return mWeatherIds[position];
+    }
+
+    public double getHigh(int position) {
+        return mHighs[position];
+    }
+
+    public double getLow(int position) {
+        return mLows[position];
+    }
+
+    /**
+     * Compares a row of this snapshot with a row of another one.
+     *
+     * @return the {@code CHANGED_*} flags for the values that differ, or 0 if they're the same
+     */
+    int getChanges(int position, ForecastSnapshot other, int otherPosition) {
+        int changes = 0;
+        if (mWeatherIds[position] != other.mWeatherIds[otherPosition]) {
+            changes |= CHANGED_CONDITION;
+        }
+        if (mHighs[position] != other.mHighs[otherPosition]
+                || mLows[position] != other.mLows[otherPosition]) {
+            changes |= CHANGED_TEMPERATURE;
+        }
+        if (mTodayJulianDay != other.mTodayJulianDay) {
+            int julianDay = toJulianDay(mDates[position]);
+            int otherJulianDay = toJulianDay(other.mDates[otherPosition]);
+            if (getDayLabelForm(julianDay - mTodayJulianDay)
+                    != getDayLabelForm(otherJulianDay - other.mTodayJulianDay)) {
+                changes |= CHANGED_DAY_LABEL;
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Computes the changes turning {@code oldSnapshot} into {@code newSnapshot} and reports them
+     * to the callback as coalesced item ranges.  Rows are matched by date, which is unique and
+     * sorted in both snapshots.
+     */
+    public static void dispatchDiff(ForecastSnapshot oldSnapshot, ForecastSnapshot newSnapshot,
+                                    DiffCallback callback) {
+        RangeBatcher batcher = new RangeBatcher(callback);
+        int oldCount = oldSnapshot.getCount();
+        int newCount = newSnapshot.getCount();
+        int i = 0;
+        int j = 0;
+        // Position in the list being transformed, where old rows are replaced by new ones.
+        int position = 0;
+        while (i < oldCount || j < newCount) {
+            if (j == newCount || (i < oldCount && oldSnapshot.mDates[i] < newSnapshot.mDates[j])) {
+                // The old row's day isn't part of the new forecast anymore.
+                batcher.add(RangeBatcher.REMOVED, position, 0);
+                i++;
+            } else if (i == oldCount || oldSnapshot.mDates[i] > newSnapshot.mDates[j]) {
+                // A new day has been added.
+                batcher.add(RangeBatcher.INSERTED, position, 0);
+                position++;
+                j++;
+            } else {
+                int changes = oldSnapshot.getChanges(i, newSnapshot, j);
+                if (changes != 0) {
+                    batcher.add(RangeBatcher.CHANGED, position, changes);
+                }
+                position++;
+                i++;
+                j++;
+            }
+        }
+        batcher.flush();
+    }
+
+    /**
+     * Coalesces consecutive single-item events of the same kind into one range event.  Changes
+     * are only coalesced when they have the same flags.
+     */
+    private static class RangeBatcher {
+        static final int NONE = 0;
+        static final int INSERTED = 1;
+        static final int REMOVED = 2;
+        static final int CHANGED = 3;
+
+        private final DiffCallback mCallback;
+        private int mType = NONE;
+        private int mStart;
+        private int mCount;
+        private int mChanges;
+
+        RangeBatcher(DiffCallback callback) {
+            mCallback = callback;
+        }
+
+        void add(int type, int position, int changes) {
+            if (type == mType && changes == mChanges) {
+                // Removals keep happening at the same position, since the list shrinks under us.
+                int next = type == REMOVED ? mStart : mStart + mCount;
+                if (position == next) {
+                    mCount++;
+                    return;
+                }
+            }
+            flush();
+            mType = type;
+            mStart = position;
+            mCount = 1;
+            mChanges = changes;
+        }
+
+        void flush() {
+            switch (mType) {
+                case INSERTED:
+                    mCallback.onInserted(mStart, mCount);
+                    break;
+                case REMOVED:
+                    mCallback.onRemoved(mStart, mCount);
+                    break;
+                case CHANGED:
+                    mCallback.onChanged(mStart, mCount, mChanges);
+                    break;
+            }
+            mType = NONE;
+            mCount = 0;
+        }
+    }
+}
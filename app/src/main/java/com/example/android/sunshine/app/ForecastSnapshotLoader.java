@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/**
+ * Loads a {@link ForecastSnapshot} of the forecast for a location, from today onwards.  The
+ * cursor is copied and closed in the background, and the {@link WeatherDisplayModel} rows are
+ * prepared there as well so that binding on the main thread only hits the cache.
+ *
+ * Like {@link android.support.v4.content.CursorLoader}, the loader reloads whenever the weather
+ * data changes.
+ */
+public class ForecastSnapshotLoader extends AsyncTaskLoader<ForecastSnapshot> {
+
+    private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver();
+    private final String mLocationSetting;
+    private final String[] mProjection;
+    private boolean mObserverRegistered;
+
+    private ForecastSnapshot mSnapshot;
+
+    public ForecastSnapshotLoader(Context context, String locationSetting, String[] projection) {
+        super(context);
+        mLocationSetting = locationSetting;
+        mProjection = projection;
+    }
+
+    @Override
+    public ForecastSnapshot loadInBackground() {
+        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                mLocationSetting, System.currentTimeMillis());
+        Cursor cursor = getContext().getContentResolver().query(weatherForLocationUri,
+                mProjection, null, null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (null == cursor) {
+            return null;
+        }
+        WeatherDisplayModel displayModel = WeatherDisplayModel.getInstance(getContext());
+        ForecastSnapshot snapshot;
+        try {
+            snapshot = ForecastSnapshot.fromCursor(cursor, mLocationSetting,
+                    displayModel.getVersion());
+        } finally {
+            cursor.close();
+        }
+        for (int i = 0; i < snapshot.getCount(); i++) {
+            displayModel.getRow(snapshot.getDate(i), snapshot.getWeatherId(i),
+                    snapshot.getHigh(i), snapshot.getLow(i));
+        }
+        // Decode the bundled graphics here rather than on the first bind
+        WeatherIconAtlas.getInstance(getContext()).warm();
+        return snapshot;
+    }
+
+    @Override
+    public void deliverResult(ForecastSnapshot snapshot) {
+        if (isReset()) {
+            return;
+        }
+        mSnapshot = snapshot;
+        if (isStarted()) {
+            super.deliverResult(snapshot);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!mObserverRegistered) {
+            getContext().getContentResolver().registerContentObserver(
+                    WeatherContract.WeatherEntry.CONTENT_URI, true, mObserver);
+            mObserverRegistered = true;
+        }
+        if (null != mSnapshot) {
+            deliverResult(mSnapshot);
+        }
+        if (takeContentChanged() || null == mSnapshot) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        mSnapshot = null;
+        if (mObserverRegistered) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            mObserverRegistered = false;
+        }
+    }
+}
@@ -28,22 +28,46 @@ import android.widget.AbsListView;
 import android.widget.Checkable;
 
 /**
- * The ItemChoiceManager class keeps track of which positions have been selected.  Note that it
- * doesn't take advantage of new adapter features to track changes in the underlying data.
+ * The ItemChoiceManager class keeps track of which positions have been selected.  When the
+ * adapter has stable ids, the selection follows its items across data set changes.
  */
 public class ItemChoiceManager {
     private final String LOG_TAG = MainActivity.class.getSimpleName();
     private final String SELECTED_ITEMS_KEY = "SIK";
     private int mChoiceMode;
 
+    /**
+     * Payload passed to {@link RecyclerView.Adapter#notifyItemChanged(int, Object)} when only the
+     * checked state of an item changed.  Adapters can bind just that state by calling
+     * {@link #onBindViewHolder(RecyclerView.ViewHolder, int)}.
+     */
+    public static final Object PAYLOAD_CHECKED_STATE = new Object();
+
     private RecyclerView.Adapter mAdapter;
     private RecyclerView.AdapterDataObserver mAdapterDataObserver = new RecyclerView.AdapterDataObserver() {
         @Override
         public void onChanged() {
             super.onChanged();
-            if (mAdapter != null && mAdapter.hasStableIds())
-                confirmCheckedPositionsById(mAdapter.getItemCount());
+            onItemPositionsChanged();
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            onItemsShifted(positionStart, 0, itemCount);
         }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            onItemsShifted(positionStart, itemCount, 0);
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            // RecyclerView only moves one item at a time.
+            onItemMoved(fromPosition, toPosition);
+        }
+
+        // Range changes keep every item at its position, so there is nothing to do for them.
     };
 
     private ItemChoiceManager() {
@@ -51,17 +75,14 @@ public class ItemChoiceManager {
 
     ;
 
+    /**
+     * Should be created after the adapter has declared whether it has stable ids.
+     */
     public ItemChoiceManager(RecyclerView.Adapter adapter) {
         mAdapter = adapter;
+        mAdapter.registerAdapterDataObserver(mAdapterDataObserver);
     }
 
-    /**
-     * How many positions in either direction we will search to try to
-     * find a checked item with a stable ID that moved position across
-     * a data set change. If the item isn't found it will be unselected.
-     */
-    private static final int CHECK_POSITION_SEARCH_DISTANCE = 20;
-
     /**
      * Running state of which positions are currently checked
      */
@@ -93,26 +114,31 @@ public class ItemChoiceManager {
                 boolean checked = mCheckStates.get(position, false);
                 if (!checked) {
                     for (int i = 0; i < checkedItemCount; i++) {
-                        mAdapter.notifyItemChanged(mCheckStates.keyAt(i));
+                        mAdapter.notifyItemChanged(mCheckStates.keyAt(i), PAYLOAD_CHECKED_STATE);
                     }
                     mCheckStates.clear();
                     mCheckStates.put(position, true);
                     mCheckedIdStates.clear();
                     mCheckedIdStates.put(mAdapter.getItemId(position), position);
                 }
-                // We directly call onBindViewHolder here because notifying that an item has
+                // We directly bind the checked state here because notifying that an item has
                 // changed on an item that has the focus causes it to lose focus, which makes
                 // keyboard navigation a bit annoying
-                mAdapter.onBindViewHolder(vh, position);
+                onBindViewHolder(vh, position);
                 break;
             }
             case AbsListView.CHOICE_MODE_MULTIPLE: {
                 boolean checked = mCheckStates.get(position, false);
                 mCheckStates.put(position, !checked);
-                // We directly call onBindViewHolder here because notifying that an item has
+                if (checked) {
+                    mCheckedIdStates.delete(mAdapter.getItemId(position));
+                } else {
+                    mCheckedIdStates.put(mAdapter.getItemId(position), position);
+                }
+                // We directly bind the checked state here because notifying that an item has
                 // changed on an item that has the focus causes it to lose focus, which makes
                 // keyboard navigation a bit annoying
-                mAdapter.onBindViewHolder(vh, position);
+                onBindViewHolder(vh, position);
                 break;
             }
             case AbsListView.CHOICE_MODE_MULTIPLE_MODAL: {
@@ -154,38 +180,97 @@ public class ItemChoiceManager {
         mCheckedIdStates.clear();
     }
 
-    void confirmCheckedPositionsById(int oldItemCount) {
-        // Clear out the positional check states, we'll rebuild it below from IDs.
+    private void onItemPositionsChanged() {
+        if (mAdapter.hasStableIds()) {
+            confirmCheckedPositionsById();
+        }
+    }
+
+    /**
+     * Moves the positions of the checked items after a range of items was removed or inserted,
+     * unchecking the items that were removed.  Range events describe every move, so the checked
+     * items don't have to be looked up again.
+     */
+    private void onItemsShifted(int positionStart, int removedCount, int insertedCount) {
+        if (!mAdapter.hasStableIds()) {
+            return;
+        }
+        for (int checkedIndex = 0; checkedIndex < mCheckedIdStates.size(); checkedIndex++) {
+            int position = mCheckedIdStates.valueAt(checkedIndex);
+            if (position >= positionStart + removedCount) {
+                mCheckedIdStates.setValueAt(checkedIndex,
+                        position + insertedCount - removedCount);
+            } else if (position >= positionStart) {
+                mCheckedIdStates.removeAt(checkedIndex);
+                checkedIndex--;
+            }
+        }
+        rebuildCheckStates();
+    }
+
+    private void onItemMoved(int fromPosition, int toPosition) {
+        if (!mAdapter.hasStableIds()) {
+            return;
+        }
+        for (int checkedIndex = 0; checkedIndex < mCheckedIdStates.size(); checkedIndex++) {
+            int position = mCheckedIdStates.valueAt(checkedIndex);
+            if (position == fromPosition) {
+                position = toPosition;
+            } else if (fromPosition < toPosition
+                    && position > fromPosition && position <= toPosition) {
+                position--;
+            } else if (toPosition < fromPosition
+                    && position >= toPosition && position < fromPosition) {
+                position++;
+            }
+            mCheckedIdStates.setValueAt(checkedIndex, position);
+        }
+        rebuildCheckStates();
+    }
+
+    /**
+     * Rebuilds the positional check states from the positions of the checked ids.
+     */
+    private void rebuildCheckStates() {
         mCheckStates.clear();
+        for (int checkedIndex = 0; checkedIndex < mCheckedIdStates.size(); checkedIndex++) {
+            mCheckStates.put(mCheckedIdStates.valueAt(checkedIndex), true);
+        }
+    }
 
+    /**
+     * Rebuilds the positional check states after the whole data set changed.  An id that isn't
+     * at its last known position anymore is looked up again, and unchecked if it isn't part of
+     * the data set anymore.
+     */
+    void confirmCheckedPositionsById() {
+        // Clear out the positional check states, we'll rebuild it below from IDs.
+        mCheckStates.clear();
+        final int itemCount = mAdapter.getItemCount();
         for (int checkedIndex = 0; checkedIndex < mCheckedIdStates.size(); checkedIndex++) {
             final long id = mCheckedIdStates.keyAt(checkedIndex);
-            final int lastPos = mCheckedIdStates.valueAt(checkedIndex);
-
-            final long lastPosId = mAdapter.getItemId(lastPos);
-            if (id != lastPosId) {
-                // Look around to see if the ID is nearby. If not, uncheck it.
-                final int start = Math.max(0, lastPos - CHECK_POSITION_SEARCH_DISTANCE);
-                final int end = Math.min(lastPos + CHECK_POSITION_SEARCH_DISTANCE, oldItemCount);
-                boolean found = false;
-                for (int searchPos = start; searchPos < end; searchPos++) {
-                    final long searchId = mAdapter.getItemId(searchPos);
-                    if (id == searchId) {
-                        found = true;
-                        mCheckStates.put(searchPos, true);
-                        mCheckedIdStates.setValueAt(checkedIndex, searchPos);
-                        break;
-                    }
-                }
-
-                if (!found) {
-                    mCheckedIdStates.delete(id);
-                    checkedIndex--;
-                }
+            int position = mCheckedIdStates.valueAt(checkedIndex);
+            if (position < 0 || position >= itemCount || mAdapter.getItemId(position) != id) {
+                position = findPosition(id, itemCount);
+            }
+            if (RecyclerView.NO_POSITION != position) {
+                mCheckStates.put(position, true);
+                mCheckedIdStates.setValueAt(checkedIndex, position);
             } else {
-                mCheckStates.put(lastPos, true);
+                // The item isn't part of the data set anymore, uncheck it.
+                mCheckedIdStates.removeAt(checkedIndex);
+                checkedIndex--;
+            }
+        }
+    }
+
+    private int findPosition(long id, int itemCount) {
+        for (int position = 0; position < itemCount; position++) {
+            if (mAdapter.getItemId(position) == id) {
+                return position;
             }
         }
+        return RecyclerView.NO_POSITION;
     }
 
     public void onBindViewHolder(RecyclerView.ViewHolder vh, int position) {
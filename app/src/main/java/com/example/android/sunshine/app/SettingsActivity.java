@@ -146,6 +146,8 @@ public class SettingsActivity extends PreferenceActivity
         } else if ( key.equals(getString(R.string.pref_art_pack_key)) ) {
             // art pack have changed. update lists of weather entries accordingly
             getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            // and fetch the new artwork before the widgets and the notification need it
+            ArtPackPrefetchService.prefetchIfNeeded(this);
         }
     }
 
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.res.Resources;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Build;
+import android.text.format.Time;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.TimeZone;
+
+/**
+ * Today's weather, as shown by the notification, the wearable, Muzei and the Today widget, and
+ * the next few days, for the wearable's forecast strip.
+ *
+ * The sync builds it once, after inserting new data, with {@link #update(Context, String)}, and
+ * every surface then gets it from {@link #getLatest(Context)} instead of querying today's row
+ * and loading its artwork again.  The large icon is only loaded when first asked for.
+ */
+public class TodaySnapshot {
+
+    private static final String[] TODAY_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    };
+    // these indices must match the projection
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_WEATHER_ID = 1;
+    private static final int INDEX_MAX_TEMP = 2;
+    private static final int INDEX_MIN_TEMP = 3;
+
+    // How many days after today are kept, for the wearable's forecast strip.
+    private static final int UPCOMING_DAYS = 4;
+
+    private static TodaySnapshot sLatest;
+
+    public final String locationSetting;
+    // The condition's description, as shown by the list and the detail view.
+    public final String description;
+    public final WeatherDisplayModel.Row row;
+    // The days after today, in order.
+    public final WeatherDisplayModel.Row[] upcoming;
+
+    private final Context mContext;
+    // What the snapshot was built from, to tell whether it is still current.
+    private final int mDisplayVersion;
+    private final int mJulianDay;
+
+    private Bitmap mLargeIcon;
+    private boolean mLargeIconLoaded;
+
+    private TodaySnapshot(Context context, String locationSetting, WeatherDisplayModel.Row row,
+                          WeatherDisplayModel.Row[] upcoming, int displayVersion, int julianDay) {
+        mContext = context;
+        this.locationSetting = locationSetting;
+        this.description = row.condition.description;
+        this.row = row;
+        this.upcoming = upcoming;
+        mDisplayVersion = displayVersion;
+        mJulianDay = julianDay;
+    }
+
+    /**
+     * Returns today's weather for the preferred location, querying it only if the last snapshot
+     * is out of date.  Must not be called on the main thread.
+     *
+     * @return the snapshot, or null if there is no data for today
+     */
+    public static TodaySnapshot getLatest(Context context) {
+        String locationSetting = Utility.getPreferredLocation(context);
+        synchronized (TodaySnapshot.class) {
+            if (null != sLatest && sLatest.isCurrent(locationSetting)) {
+                return sLatest;
+            }
+        }
+        return update(context, locationSetting);
+    }
+
+    /**
+     * Queries today's weather and makes it the latest snapshot.  Must not be called on the main
+     * thread.
+     *
+     * @return the snapshot, or null if there is no data for today
+     */
+    public static TodaySnapshot update(Context context, String locationSetting) {
+        context = context.getApplicationContext();
+        WeatherDisplayModel displayModel = WeatherDisplayModel.getInstance(context);
+        // Read the version first, so that a concurrent change leaves the snapshot out of date
+        int displayVersion = displayModel.getVersion();
+        long now = System.currentTimeMillis();
+        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                locationSetting, now);
+        Cursor cursor = context.getContentResolver().query(weatherForLocationUri, TODAY_COLUMNS,
+                null, null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        TodaySnapshot snapshot = null;
+        if (null != cursor) {
+            // The forecast starts today, unless today's row is missing, in which case there is
+            // nothing to show rather than tomorrow's weather.
+            int today = toJulianDay(now);
+            if (cursor.moveToFirst() && toJulianDay(cursor.getLong(INDEX_DATE)) == today) {
+                WeatherDisplayModel.Row row = getRow(displayModel, cursor);
+                WeatherDisplayModel.Row[] upcoming = new WeatherDisplayModel.Row[
+                        Math.min(UPCOMING_DAYS, cursor.getCount() - 1)];
+                for (int i = 0; i < upcoming.length && cursor.moveToNext(); i++) {
+                    upcoming[i] = getRow(displayModel, cursor);
+                }
+                snapshot = new TodaySnapshot(context, locationSetting, row, upcoming,
+                        displayVersion, today);
+            }
+            cursor.close();
+        }
+        synchronized (TodaySnapshot.class) {
+            sLatest = snapshot;
+        }
+        return snapshot;
+    }
+
+    private static WeatherDisplayModel.Row getRow(WeatherDisplayModel displayModel,
+                                                  Cursor cursor) {
+        return displayModel.getRow(
+                cursor.getLong(INDEX_DATE),
+                cursor.getInt(INDEX_WEATHER_ID),
+                cursor.getDouble(INDEX_MAX_TEMP),
+                cursor.getDouble(INDEX_MIN_TEMP));
+    }
+
+    private boolean isCurrent(String currentLocationSetting) {
+        return locationSetting.equals(currentLocationSetting)
+                && mDisplayVersion == WeatherDisplayModel.getInstance(mContext).getVersion()
+                && mJulianDay == toJulianDay(System.currentTimeMillis());
+    }
+
+    private static int toJulianDay(long dateInMillis) {
+        return Time.getJulianDay(dateInMillis,
+                TimeZone.getDefault().getOffset(dateInMillis) / 1000);
+    }
+
+    public int getWeatherId() {
+        return row.condition.weatherId;
+    }
+
+    /**
+     * Returns the artwork of the selected art pack at the size of a notification large icon,
+     * loading it on the first call.  Must not be called on the main thread.
+     *
+     * @return the artwork, or null if there is none for this condition
+     */
+    public synchronized Bitmap getLargeIcon() {
+        if (!mLargeIconLoaded) {
+            mLargeIcon = WeatherArtCache.getInstance(mContext).getArt(getWeatherId(),
+                    getLargeIconWidth(mContext), getLargeIconHeight(mContext));
+            mLargeIconLoaded = true;
+        }
+        return mLargeIcon;
+    }
+
+    // On Honeycomb and higher devices, we can retrieve the size of the large icon
+    // Prior to that, we use a fixed size
+    @SuppressLint("InlinedApi")
+    public static int getLargeIconWidth(Context context) {
+        Resources resources = context.getResources();
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
+                : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+    }
+
+    @SuppressLint("InlinedApi")
+    public static int getLargeIconHeight(Context context) {
+        Resources resources = context.getResources();
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
+                : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.preference.PreferenceManager;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Process-wide cache of decoded weather artwork for the surfaces that need a {@link Bitmap}
+ * rather than an {@link android.widget.ImageView}: the notification, the wearable and the
+ * widgets.  There are only a handful of artworks, one per condition class, so bitmaps are keyed
+ * by condition class, art pack and size rather than by weather id.
+ *
+ * The cache is bounded to a fraction of the heap and evicts the least recently used bitmaps.
+ * Loads may hit the disk or the network, so they must not be done on the main thread.
+ */
+public class WeatherArtCache {
+    private static final String LOG_TAG = WeatherArtCache.class.getSimpleName();
+
+    // Art pack used in the keys of the bundled artwork.
+    private static final String LOCAL_ART_PACK = "local";
+
+    private static WeatherArtCache sInstance;
+
+    private final Context mContext;
+    private final LruCache<String, Bitmap> mCache;
+
+    private int mHits;
+    private int mMisses;
+
+    public static synchronized WeatherArtCache getInstance(Context context) {
+        if (null == sInstance) {
+            sInstance = new WeatherArtCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private WeatherArtCache(Context context) {
+        mContext = context;
+        // Use 1/16th of the available memory for this cache, in bytes.
+        int cacheSize = (int) (Runtime.getRuntime().maxMemory() / 16);
+        mCache = new LruCache<String, Bitmap>(cacheSize) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Returns the artwork of the selected art pack for a weather condition, scaled to fit the
+     * given size.  Falls back to the bundled artwork if the art pack can't be loaded.
+     *
+     * @return the artwork, or null if there is none for this condition
+     */
+    public Bitmap getArt(int weatherId, int width, int height) {
+        Bitmap art = null;
+        if (!Utility.usingLocalGraphics(mContext)) {
+            art = getRemoteArt(weatherId, width, height);
+        }
+        if (null == art) {
+            art = getLocalArt(weatherId, width, height);
+        }
+        return art;
+    }
+
+    /**
+     * Returns the artwork of the selected art pack for a weather condition, scaled to fit the
+     * given size.
+     *
+     * @return the artwork, or null if there is none or it couldn't be loaded
+     */
+    public Bitmap getRemoteArt(int weatherId, int width, int height) {
+        String artUrl = Utility.getArtUrlForWeatherCondition(mContext, weatherId);
+        if (null == artUrl) {
+            return null;
+        }
+        String key = getKey(weatherId, getArtPack(), width, height);
+        Bitmap art = get(key);
+        if (null == art) {
+            try {
+                art = Glide.with(mContext)
+                        .load(artUrl)
+                        .asBitmap()
+                        .diskCacheStrategy(DiskCacheStrategy.ALL)
+                        .fitCenter()
+                        .into(width, height).get();
+            } catch (InterruptedException | ExecutionException e) {
+                Log.e(LOG_TAG, "Error retrieving art from " + artUrl, e);
+                return null;
+            }
+            put(key, art);
+        }
+        return art;
+    }
+
+    /**
+     * Returns the bundled artwork for a weather condition, scaled to fit the given size.
+     *
+     * @return the artwork, or null if there is none for this condition
+     */
+    public Bitmap getLocalArt(int weatherId, int width, int height) {
+        int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
+        if (-1 == artResourceId) {
+            return null;
+        }
+        String key = getKey(weatherId, LOCAL_ART_PACK, width, height);
+        Bitmap art = get(key);
+        if (null == art) {
+            art = decodeResource(mContext.getResources(), artResourceId, width, height);
+            put(key, art);
+        }
+        return art;
+    }
+
+    public synchronized int getHitCount() {
+        return mHits;
+    }
+
+    public synchronized int getMissCount() {
+        return mMisses;
+    }
+
+    private Bitmap get(String key) {
+        Bitmap art = mCache.get(key);
+        synchronized (this) {
+            if (null != art) {
+                mHits++;
+            } else {
+                mMisses++;
+            }
+        }
+        return art;
+    }
+
+    private void put(String key, Bitmap art) {
+        if (null != art) {
+            mCache.put(key, art);
+            Log.d(LOG_TAG, "Cached art " + key + " (" + art.getByteCount() + " bytes, "
+                    + getHitCount() + " hits, " + getMissCount() + " misses)");
+        }
+    }
+
+    private String getArtPack() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        return prefs.getString(mContext.getString(R.string.pref_art_pack_key),
+                mContext.getString(R.string.pref_art_pack_sunshine));
+    }
+
+    private static String getKey(int weatherId, String artPack, int width, int height) {
+        return Utility.getArtClassForWeatherCondition(weatherId) + '|' + artPack
+                + '|' + width + 'x' + height;
+    }
+
+    /**
+     * Decodes a drawable resource subsampled close to the given size, then scales it down to fit.
+     */
+    static Bitmap decodeResource(Resources resources, int resId, int width, int height) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, resId, options);
+        options.inSampleSize = 1;
+        while (options.outWidth / (options.inSampleSize * 2) >= width
+                && options.outHeight / (options.inSampleSize * 2) >= height) {
+            options.inSampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        Bitmap bitmap = BitmapFactory.decodeResource(resources, resId, options);
+        if (null != bitmap && (bitmap.getWidth() > width || bitmap.getHeight() > height)) {
+            float scale = Math.min((float) width / bitmap.getWidth(),
+                    (float) height / bitmap.getHeight());
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                    Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                    Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+            if (scaled != bitmap) {
+                bitmap.recycle();
+            }
+            bitmap = scaled;
+        }
+        return bitmap;
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.net.Uri;
+import android.preference.PreferenceManager;
+import android.support.v4.util.LongSparseArray;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.Locale;
+
+/**
+ * In-memory render model shared by every surface that shows a forecast row: the forecast list,
+ * the detail view, the widgets, the notification and the wearable.
+ *
+ * Each row holds the presentation derived from the raw database values (condition text,
+ * formatted temperatures, accessibility strings and artwork), so consumers only have to bind
+ * strings.  The model is materialised at the end of every sync and rebuilt lazily whenever the
+ * locale, the temperature units or the art pack change.  Day labels depend on the current day
+ * rather than on the row, so they are kept in {@link DayLabelCache} instead.
+ */
+public class WeatherDisplayModel implements SharedPreferences.OnSharedPreferenceChangeListener {
+    private static final String LOG_TAG = WeatherDisplayModel.class.getSimpleName();
+
+    // Upper bound for the number of cached temperatures before the cache is reset.
+    private static final int MAX_CACHED_TEMPERATURES = 256;
+
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    };
+    // these indices must match the projection
+    private static final int INDEX_WEATHER_DATE = 0;
+    private static final int INDEX_WEATHER_CONDITION_ID = 1;
+    private static final int INDEX_WEATHER_MAX_TEMP = 2;
+    private static final int INDEX_WEATHER_MIN_TEMP = 3;
+
+    private static WeatherDisplayModel sInstance;
+
+    /**
+     * Presentation of a weather condition, shared by every row with the same condition id.
+     */
+    public static class Condition {
+        public final int weatherId;
+        public final String description;
+        // Content descriptions for the description view and for the icon.
+        public final String descriptionA11y;
+        public final String iconA11y;
+        public final int iconResourceId;
+        public final int artResourceId;
+        // Remote artwork for the selected art pack, or null when using local graphics.
+        public final String artUrl;
+
+        Condition(Context context, int weatherId, boolean usingLocalGraphics) {
+            this.weatherId = weatherId;
+            description = Utility.getStringForWeatherCondition(context, weatherId);
+            descriptionA11y = context.getString(R.string.a11y_forecast, description);
+            iconA11y = context.getString(R.string.a11y_forecast_icon, description);
+            iconResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
+            artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
+            artUrl = usingLocalGraphics ? null
+                    : Utility.getArtUrlForWeatherCondition(context, weatherId);
+        }
+    }
+
+    /**
+     * Presentation of a single forecast row.
+     */
+    public static class Row {
+        public final long date;
+        public final double high;
+        public final double low;
+        public final Condition condition;
+        public final String highString;
+        public final String lowString;
+        public final String highA11y;
+        public final String lowA11y;
+
+        Row(long date, double high, double low, Condition condition,
+            String highString, String lowString, String highA11y, String lowA11y) {
+            this.date = date;
+            this.high = high;
+            this.low = low;
+            this.condition = condition;
+            this.highString = highString;
+            this.lowString = lowString;
+            this.highA11y = highA11y;
+            this.lowA11y = lowA11y;
+        }
+
+        boolean matches(int weatherId, double high, double low) {
+            return condition.weatherId == weatherId && this.high == high && this.low == low;
+        }
+    }
+
+    private final Context mContext;
+    private final String mUnitsKey;
+    private final String mArtPackKey;
+
+    private final LongSparseArray<Row> mRows = new LongSparseArray<Row>();
+    private final SparseArray<Condition> mConditions = new SparseArray<Condition>();
+    private final LongSparseArray<String> mTemperatures = new LongSparseArray<String>();
+    private Locale mLocale;
+    private boolean mUsingLocalGraphics;
+    // Bumped on every invalidation, so views bound from an older configuration can be refreshed.
+    private int mVersion;
+
+    private int mHits;
+    private int mMisses;
+
+    public static synchronized WeatherDisplayModel getInstance(Context context) {
+        if (null == sInstance) {
+            sInstance = new WeatherDisplayModel(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private WeatherDisplayModel(Context context) {
+        mContext = context;
+        mUnitsKey = context.getString(R.string.pref_units_key);
+        mArtPackKey = context.getString(R.string.pref_art_pack_key);
+        // The preferences only keep a weak reference to the listener, which is fine since the
+        // model lives as long as the process.
+        PreferenceManager.getDefaultSharedPreferences(context)
+                .registerOnSharedPreferenceChangeListener(this);
+    }
+
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+        if (mUnitsKey.equals(key) || mArtPackKey.equals(key)) {
+            invalidate();
+        }
+    }
+
+    /**
+     * Drops everything derived from the current configuration.
+     */
+    public synchronized void invalidate() {
+        mRows.clear();
+        mConditions.clear();
+        mTemperatures.clear();
+        mLocale = null;
+        mVersion++;
+    }
+
+    /**
+     * Returns the version of the current configuration.  It changes whenever the cached
+     * presentation is dropped.
+     */
+    public synchronized int getVersion() {
+        ensureConfiguration();
+        return mVersion;
+    }
+
+    /**
+     * Returns the presentation for a forecast row, building it if it isn't cached yet or if the
+     * cached row was built from different values.
+     */
+    public synchronized Row getRow(long date, int weatherId, double high, double low) {
+        ensureConfiguration();
+        Row row = mRows.get(date);
+        if (null != row && row.matches(weatherId, high, low)) {
+            mHits++;
+            return row;
+        }
+        mMisses++;
+        String highString = getTemperature(high);
+        String lowString = getTemperature(low);
+        row = new Row(date, high, low, getCondition(weatherId),
+                highString, lowString,
+                mContext.getString(R.string.a11y_high_temp, highString),
+                mContext.getString(R.string.a11y_low_temp, lowString));
+        mRows.put(date, row);
+        return row;
+    }
+
+    /**
+     * Returns the presentation for a weather condition id.
+     */
+    public synchronized Condition getCondition(int weatherId) {
+        ensureConfiguration();
+        Condition condition = mConditions.get(weatherId);
+        if (null == condition) {
+            condition = new Condition(mContext, weatherId, mUsingLocalGraphics);
+            mConditions.put(weatherId, condition);
+        }
+        return condition;
+    }
+
+    /**
+     * Materialises the rows for the forecast of the given location.  Called at the end of a sync,
+     * off the main thread, so that the surfaces refreshed by the sync only hit the cache.
+     */
+    public void prepare(String locationSetting) {
+        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                locationSetting, System.currentTimeMillis());
+        Cursor cursor = mContext.getContentResolver().query(weatherForLocationUri,
+                FORECAST_COLUMNS, null, null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (null == cursor) {
+            return;
+        }
+        try {
+            synchronized (this) {
+                // Rows for dates that are no longer part of the forecast aren't needed anymore.
+                mRows.clear();
+                while (cursor.moveToNext()) {
+                    getRow(cursor.getLong(INDEX_WEATHER_DATE),
+                            cursor.getInt(INDEX_WEATHER_CONDITION_ID),
+                            cursor.getDouble(INDEX_WEATHER_MAX_TEMP),
+                            cursor.getDouble(INDEX_WEATHER_MIN_TEMP));
+                }
+                Log.d(LOG_TAG, "Display model ready: " + mRows.size() + " rows, "
+                        + mHits + " hits, " + mMisses + " misses");
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private String getTemperature(double temperature) {
+        long key = Double.doubleToLongBits(temperature);
+        String formatted = mTemperatures.get(key);
+        if (null == formatted) {
+            if (mTemperatures.size() >= MAX_CACHED_TEMPERATURES) {
+                mTemperatures.clear();
+            }
+            formatted = Utility.formatTemperature(mContext, temperature);
+            mTemperatures.put(key, formatted);
+        }
+        return formatted;
+    }
+
+    /**
+     * Drops the cached presentation if the locale changed since it was built.  Units and art
+     * pack changes are picked up through the preference listener.  Must be called with the lock
+     * held.
+     */
+    private void ensureConfiguration() {
+        Locale locale = Locale.getDefault();
+        if (!locale.equals(mLocale)) {
+            invalidate();
+            mLocale = locale;
+            mUsingLocalGraphics = Utility.usingLocalGraphics(mContext);
+        }
+    }
+}
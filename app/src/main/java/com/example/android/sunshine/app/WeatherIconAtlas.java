@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.os.AsyncTask;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Atlas of the bundled weather graphics: the icon and the artwork of every condition class are
+ * decoded once, at the size they are displayed at, into a single bitmap.  The list and the
+ * detail view then draw regions of that bitmap, so binding a row or switching conditions never
+ * decodes a resource again.
+ *
+ * The atlas is built on first use.  {@link #warm()} builds it ahead of time, off the main thread,
+ * and {@link #warmAsync()} starts building it from the main thread, which should then only use
+ * the atlas once {@link #isBuilt()}.
+ */
+public class WeatherIconAtlas {
+    private static final String LOG_TAG = WeatherIconAtlas.class.getSimpleName();
+
+    private static WeatherIconAtlas sInstance;
+
+    private final Context mContext;
+
+    // Set once the atlas is built, read without the lock by isBuilt.
+    private volatile Bitmap mAtlas;
+    private final AtomicBoolean mWarmStarted = new AtomicBoolean();
+    // Regions of the atlas, by condition class.
+    private final HashMap<String, Rect> mIconRegions = new HashMap<String, Rect>();
+    private final HashMap<String, Rect> mArtRegions = new HashMap<String, Rect>();
+
+    public static synchronized WeatherIconAtlas getInstance(Context context) {
+        if (null == sInstance) {
+            sInstance = new WeatherIconAtlas(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private WeatherIconAtlas(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Returns whether the atlas is built, so that getting a drawable doesn't decode anything.
+     */
+    public boolean isBuilt() {
+        return null != mAtlas;
+    }
+
+    /**
+     * Starts building the atlas on a background thread, unless it is built or being built.
+     */
+    public void warmAsync() {
+        if (isBuilt() || !mWarmStarted.compareAndSet(false, true)) {
+            return;
+        }
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                warm();
+            }
+        });
+    }
+
+    /**
+     * Builds the atlas if it wasn't yet.
+     */
+    public synchronized void warm() {
+        if (null != mAtlas) {
+            return;
+        }
+        long startNanos = System.nanoTime();
+        Resources resources = mContext.getResources();
+        int iconSize = resources.getDimensionPixelSize(R.dimen.list_icon);
+        int artSize = resources.getDimensionPixelSize(R.dimen.today_icon);
+
+        // One column per condition class, with the icon above the artwork.
+        int[] weatherIds = Utility.ART_CLASS_WEATHER_IDS;
+        Bitmap atlas = Bitmap.createBitmap(weatherIds.length * artSize, iconSize + artSize,
+                Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(atlas);
+        Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        for (int i = 0; i < weatherIds.length; i++) {
+            String artClass = Utility.getArtClassForWeatherCondition(weatherIds[i]);
+            Rect iconRegion = draw(canvas, paint,
+                    Utility.getIconResourceForWeatherCondition(weatherIds[i]),
+                    i * artSize, 0, iconSize);
+            if (null != iconRegion) {
+                mIconRegions.put(artClass, iconRegion);
+            }
+            Rect artRegion = draw(canvas, paint,
+                    Utility.getArtResourceForWeatherCondition(weatherIds[i]),
+                    i * artSize, iconSize, artSize);
+            if (null != artRegion) {
+                mArtRegions.put(artClass, artRegion);
+            }
+        }
+        mAtlas = atlas;
+        Log.d(LOG_TAG, "Built weather atlas in " + (System.nanoTime() - startNanos) / 1000
+                + "us, " + atlas.getByteCount() + " bytes");
+    }
+
+    /**
+     * Draws a resource into the atlas, scaled to fit a cell of the given size.
+     *
+     * @return the region of the atlas the resource was drawn to, or null if it couldn't be decoded
+     */
+    private Rect draw(Canvas canvas, Paint paint, int resId, int left, int top, int size) {
+        if (-1 == resId) {
+            return null;
+        }
+        Bitmap bitmap = WeatherArtCache.decodeResource(mContext.getResources(), resId, size, size);
+        if (null == bitmap) {
+            return null;
+        }
+        Rect region = new Rect(left, top, left + bitmap.getWidth(), top + bitmap.getHeight());
+        canvas.drawBitmap(bitmap, null, region, paint);
+        bitmap.recycle();
+        return region;
+    }
+
+    /**
+     * Returns the bundled icon for a weather condition.
+     *
+     * @return a drawable sharing the atlas, or null if there is no icon for this condition
+     */
+    public Drawable getIcon(int weatherId) {
+        return getDrawable(mIconRegions, weatherId);
+    }
+
+    /**
+     * Returns the bundled artwork for a weather condition.
+     *
+     * @return a drawable sharing the atlas, or null if there is no artwork for this condition
+     */
+    public Drawable getArt(int weatherId) {
+        return getDrawable(mArtRegions, weatherId);
+    }
+
+    private synchronized Drawable getDrawable(HashMap<String, Rect> regions, int weatherId) {
+        warm();
+        Rect region = regions.get(Utility.getArtClassForWeatherCondition(weatherId));
+        if (null == region) {
+            return null;
+        }
+        return new RegionDrawable(mAtlas, region);
+    }
+
+    /**
+     * Draws a region of a bitmap, scaled to its bounds.
+     */
+    static class RegionDrawable extends Drawable {
+        private final Bitmap mBitmap;
+        private final Rect mRegion;
+        private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+        RegionDrawable(Bitmap bitmap, Rect region) {
+            mBitmap = bitmap;
+            mRegion = region;
+        }
+
+        /**
+         * Returns the region of the atlas this drawable draws.
+         */
+        Rect getRegion() {
+            return mRegion;
+        }
+
+        @Override
+        public void draw(Canvas canvas) {
+            canvas.drawBitmap(mBitmap, mRegion, getBounds(), mPaint);
+        }
+
+        @Override
+        public int getIntrinsicWidth() {
+            return mRegion.width();
+        }
+
+        @Override
+        public int getIntrinsicHeight() {
+            return mRegion.height();
+        }
+
+        @Override
+        public void setAlpha(int alpha) {
+            mPaint.setAlpha(alpha);
+            invalidateSelf();
+        }
+
+        @Override
+        public void setColorFilter(ColorFilter colorFilter) {
+            mPaint.setColorFilter(colorFilter);
+            invalidateSelf();
+        }
+
+        @Override
+        public int getOpacity() {
+            return PixelFormat.TRANSLUCENT;
+        }
+    }
+}
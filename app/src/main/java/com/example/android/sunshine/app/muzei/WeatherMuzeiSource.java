@@ -16,27 +16,48 @@
 package com.example.android.sunshine.app.muzei;
 
 import android.content.Intent;
-import android.database.Cursor;
+import android.graphics.Bitmap;
 import android.net.Uri;
+import android.support.v4.content.FileProvider;
+import android.util.Base64;
+import android.util.DisplayMetrics;
+import android.util.Log;
 
+import com.bumptech.glide.Glide;
 import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.TodaySnapshot;
 import com.example.android.sunshine.app.Utility;
-import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 import com.google.android.apps.muzei.api.Artwork;
 import com.google.android.apps.muzei.api.MuzeiArtSource;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ExecutionException;
+
 /**
  * Muzei source that changes your background based on the current weather conditions
+ *
+ * The photos are downloaded once, downscaled to the screen size, and kept in a local cache named
+ * after their URL, which Muzei reads through a {@link FileProvider}.  A new artwork is only
+ * published when the photo or the location changes, so Muzei doesn't reload the same photo after
+ * every sync.
  */
 public class WeatherMuzeiSource extends MuzeiArtSource {
-    private static final String[] FORECAST_COLUMNS = new String[]{
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
-    };
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_SHORT_DESC = 1;
+    private static final String LOG_TAG = WeatherMuzeiSource.class.getSimpleName();
+
+    private static final String MUZEI_PACKAGE = "net.nurik.roman.muzei";
+    // Must match the path in res/xml/muzei_artwork_paths.xml
+    private static final String ARTWORK_DIRECTORY = "muzei";
+    private static final int ARTWORK_JPEG_QUALITY = 90;
+    // Appended to the token of a photo Muzei downloads itself
+    private static final String REMOTE_TOKEN_SUFFIX = "|remote";
 
     public WeatherMuzeiSource() {
         super("WeatherMuzeiSource");
@@ -54,26 +75,123 @@ public class WeatherMuzeiSource extends MuzeiArtSource {
 
     @Override
     protected void onUpdate(int reason) {
-        String location = Utility.getPreferredLocation(this);
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
-        Cursor cursor = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
-                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-        if (cursor.moveToFirst()) {
-            int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-            String desc = cursor.getString(INDEX_SHORT_DESC);
+        // Shared with the other surfaces refreshed after a sync
+        TodaySnapshot today = TodaySnapshot.getLatest(this);
+        if (null == today) {
+            return;
+        }
+        String imageUrl = Utility.getImageUrlForWeatherCondition(today.getWeatherId());
+        // Only publish a new wallpaper if we have a valid image
+        if (imageUrl == null) {
+            return;
+        }
+        // The token identifies what the wallpaper shows
+        String token = imageUrl + '|' + today.locationSetting;
+        Artwork currentArtwork = getCurrentArtwork();
+        String currentToken = null == currentArtwork ? null : currentArtwork.getToken();
+        if (token.equals(currentToken)) {
+            return;
+        }
 
-            String imageUrl = Utility.getImageUrlForWeatherCondition(weatherId);
-            // Only publish a new wallpaper if we have a valid image
-            if (imageUrl != null) {
-                publishArtwork(new Artwork.Builder()
-                        .imageUri(Uri.parse(imageUrl))
-                        .title(desc)
-                        .byline(location)
-                        .viewIntent(new Intent(this, MainActivity.class))
-                        .build());
+        Uri imageUri = getCachedArtworkUri(imageUrl);
+        if (null == imageUri) {
+            // Let Muzei download the photo itself.  The remote photo has its own token, so that
+            // the cached copy still replaces it once it could be downloaded.
+            token += REMOTE_TOKEN_SUFFIX;
+            if (token.equals(currentToken)) {
+                return;
             }
+            imageUri = Uri.parse(imageUrl);
+        } else {
+            grantUriPermission(MUZEI_PACKAGE, imageUri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        }
+        publishArtwork(new Artwork.Builder()
+                .imageUri(imageUri)
+                .token(token)
+                .title(today.description)
+                .byline(today.locationSetting)
+                .viewIntent(new Intent(this, MainActivity.class))
+                .build());
+    }
+
+    /**
+     * Returns the content URI of the downscaled copy of a photo, downloading it if it isn't
+     * cached yet.  There is one photo per group of conditions, so the cache stays small.
+     *
+     * @return the URI, or null if the photo couldn't be downloaded
+     */
+    private Uri getCachedArtworkUri(String imageUrl) {
+        File directory = new File(getFilesDir(), ARTWORK_DIRECTORY);
+        File file = new File(directory, getCacheName(imageUrl));
+        if (!file.exists() && !downloadArtwork(imageUrl, directory, file)) {
+            return null;
+        }
+        return FileProvider.getUriForFile(this, getString(R.string.muzei_artwork_authority), file);
+    }
+
+    private boolean downloadArtwork(String imageUrl, File directory, File file) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(LOG_TAG, "Can't create " + directory);
+            return false;
+        }
+        // Downsample to no less than the screen, in either orientation
+        DisplayMetrics displayMetrics = getResources().getDisplayMetrics();
+        int size = Math.max(displayMetrics.widthPixels, displayMetrics.heightPixels);
+        Bitmap bitmap;
+        try {
+            bitmap = Glide.with(this)
+                    .load(imageUrl)
+                    .asBitmap()
+                    .into(size, size)
+                    .get();
+        } catch (InterruptedException | ExecutionException e) {
+            Log.e(LOG_TAG, "Error downloading artwork from " + imageUrl, e);
+            return false;
+        }
+
+        // Write to a temporary file first, so that Muzei never reads a partial photo
+        File partialFile = new File(directory, file.getName() + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(partialFile);
+            if (!bitmap.compress(Bitmap.CompressFormat.JPEG, ARTWORK_JPEG_QUALITY, out)) {
+                Log.e(LOG_TAG, "Error compressing artwork from " + imageUrl);
+                partialFile.delete();
+                return false;
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error caching artwork from " + imageUrl, e);
+            partialFile.delete();
+            return false;
+        } finally {
+            if (null != out) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+        if (!partialFile.renameTo(file)) {
+            partialFile.delete();
+            return false;
+        }
+        Log.d(LOG_TAG, "Cached artwork from " + imageUrl + " (" + file.length() + " bytes)");
+        return true;
+    }
+
+    /**
+     * Returns the name of the cached copy of a photo, derived from its URL.
+     */
+    private static String getCacheName(String imageUrl) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = messageDigest.digest(imageUrl.getBytes("UTF-8"));
+            return Base64.encodeToString(hash,
+                    Base64.URL_SAFE | Base64.NO_WRAP | Base64.NO_PADDING) + ".jpg";
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            // Both are guaranteed to be available, but fall back to the hash code.
+            return Integer.toHexString(imageUrl.hashCode()) + ".jpg";
         }
-        cursor.close();
     }
 }
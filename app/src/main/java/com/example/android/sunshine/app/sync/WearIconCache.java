@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.util.Log;
+
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.DataItemBuffer;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Keeps track of the weather icons already sent to the wearable.  Icons are identified by a hash
+ * of their pixels: the weather data only carries that hash, and the icon itself is sent once, in
+ * its own data item under {@link #PATH_ICON_PREFIX}, which the watch keeps in a persistent store.
+ * An icon recorded as sent is sent again if its data item was deleted from the data layer.
+ */
+class WearIconCache {
+    private static final String LOG_TAG = WearIconCache.class.getSimpleName();
+
+    // Path of the data items holding the icons, followed by their hash.
+    static final String PATH_ICON_PREFIX = "/sunshine_watch_face/Icon/";
+
+    private static final String PREFS_NAME = "wear_icons";
+
+    private final SharedPreferences mPrefs;
+
+    WearIconCache(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Returns whether the icon with this hash was already sent to the wearable, and its data
+     * item is still in the data layer.  Blocks, so it must not be called on the main thread.
+     */
+    boolean isSent(GoogleApiClient googleApiClient, String iconHash) {
+        if (!mPrefs.getBoolean(iconHash, false)) {
+            return false;
+        }
+        Uri iconUri = new Uri.Builder()
+                .scheme(PutDataRequest.WEAR_URI_SCHEME)
+                .path(PATH_ICON_PREFIX + iconHash)
+                .build();
+        DataItemBuffer dataItems = Wearable.DataApi.getDataItems(googleApiClient, iconUri).await();
+        try {
+            if (!dataItems.getStatus().isSuccess()) {
+                // Sending the icon again is cheaper than a watch face without it.
+                Log.e(LOG_TAG, "Can't check icon " + iconHash + ": " + dataItems.getStatus());
+                return false;
+            }
+            if (dataItems.getCount() == 0) {
+                Log.d(LOG_TAG, "Icon " + iconHash + " was deleted, sending it again");
+                mPrefs.edit().remove(iconHash).apply();
+                return false;
+            }
+            return true;
+        } finally {
+            dataItems.release();
+        }
+    }
+
+    void setSent(String iconHash) {
+        mPrefs.edit().putBoolean(iconHash, true).apply();
+    }
+
+    /**
+     * Computes a hash of the pixels of an icon, as a hex string.
+     */
+    static String hash(Bitmap icon) {
+        ByteBuffer pixels = ByteBuffer.allocate(icon.getByteCount());
+        icon.copyPixelsToBuffer(pixels);
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-1");
+            messageDigest.update(pixels.array());
+            // Icons of different shapes can have the same pixel bytes
+            messageDigest.update(ByteBuffer.allocate(8)
+                    .putInt(icon.getWidth()).putInt(icon.getHeight()).array());
+            byte[] hash = messageDigest.digest();
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16))
+                        .append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is guaranteed to be available, but fall back to a weaker hash.
+            return Integer.toHexString(pixels.hashCode());
+        }
+    }
+
+    /**
+     * Encodes an icon as PNG.
+     */
+    static byte[] toPng(Bitmap icon) {
+        ByteArrayOutputStream byteStream = null;
+        try {
+            byteStream = new ByteArrayOutputStream();
+            icon.compress(Bitmap.CompressFormat.PNG, 100, byteStream);
+            return byteStream.toByteArray();
+        } finally {
+            if (null != byteStream) {
+                try {
+                    byteStream.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+}
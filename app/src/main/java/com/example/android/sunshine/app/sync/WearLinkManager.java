@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.Wearable;
+
+import java.io.PrintWriter;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Manages the connection to the wearable data layer.  The connection is only made when there is
+ * something to send, and is kept for {@link #IDLE_DISCONNECT_MILLIS} after the last use, so that
+ * closely spaced syncs share it.
+ *
+ * Callers {@link #acquire()} the client before using it and {@link #release()} it when done.
+ * Connecting blocks, so it must not be done on the main thread.  The connection metrics are
+ * dumped with {@code adb shell dumpsys activity service SunshineSyncService}.
+ */
+class WearLinkManager {
+    private static final String LOG_TAG = WearLinkManager.class.getSimpleName();
+
+    private static final long CONNECT_TIMEOUT_MILLIS = 10 * 1000;
+    // How long the connection is kept after it was last used.
+    private static final long IDLE_DISCONNECT_MILLIS = 60 * 1000;
+
+    private static WearLinkManager sInstance;
+
+    private final GoogleApiClient mGoogleApiClient;
+    private final ScheduledExecutorService mExecutor =
+            Executors.newSingleThreadScheduledExecutor();
+    private ScheduledFuture<?> mIdleDisconnect;
+    private int mUsers;
+    // Held while connecting, instead of the instance lock.
+    private final Object mConnectLock = new Object();
+
+    // Connection metrics.
+    private int mConnects;
+    private int mReuses;
+    private int mFailures;
+    private long mTotalConnectMillis;
+    private long mLastConnectMillis;
+
+    static synchronized WearLinkManager getInstance(Context context) {
+        if (null == sInstance) {
+            sInstance = new WearLinkManager(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private WearLinkManager(Context context) {
+        mGoogleApiClient = new GoogleApiClient.Builder(context)
+                .addApi(Wearable.API)
+                .build();
+    }
+
+    /**
+     * Returns the connected client, connecting it if needed.
+     *
+     * @return the client, or null if it couldn't connect before the timeout.  The client must be
+     * released in either case.
+     */
+    GoogleApiClient acquire() {
+        synchronized (this) {
+            mUsers++;
+            if (null != mIdleDisconnect) {
+                mIdleDisconnect.cancel(false);
+                mIdleDisconnect = null;
+            }
+            if (mGoogleApiClient.isConnected()) {
+                mReuses++;
+                return mGoogleApiClient;
+            }
+        }
+
+        // Connect without holding the lock, so that releasing and dumping don't wait for the
+        // connection.  Callers connect one at a time, and the client isn't disconnected while
+        // they wait since they count as users.
+        synchronized (mConnectLock) {
+            if (mGoogleApiClient.isConnected()) {
+                synchronized (this) {
+                    mReuses++;
+                }
+                return mGoogleApiClient;
+            }
+            long startMillis = SystemClock.elapsedRealtime();
+            ConnectionResult result = mGoogleApiClient.blockingConnect(CONNECT_TIMEOUT_MILLIS,
+                    TimeUnit.MILLISECONDS);
+            long connectMillis = SystemClock.elapsedRealtime() - startMillis;
+            synchronized (this) {
+                if (!result.isSuccess()) {
+                    mFailures++;
+                    Log.e(LOG_TAG, "Can't connect to the wearable data layer after "
+                            + connectMillis + "ms: " + result);
+                    return null;
+                }
+                mConnects++;
+                mTotalConnectMillis += connectMillis;
+                mLastConnectMillis = connectMillis;
+                Log.d(LOG_TAG, "Connected in " + connectMillis + "ms (" + mConnects
+                        + " connects, " + getAverageConnectMillis() + "ms average, " + mReuses
+                        + " reuses, " + mFailures + " failures)");
+            }
+            return mGoogleApiClient;
+        }
+    }
+
+    /**
+     * Releases the client, which is disconnected once it is no longer used.
+     */
+    synchronized void release() {
+        mUsers--;
+        if (mUsers > 0) {
+            return;
+        }
+        mIdleDisconnect = mExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                disconnectIfIdle();
+            }
+        }, IDLE_DISCONNECT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void disconnectIfIdle() {
+        if (mUsers == 0 && mGoogleApiClient.isConnected()) {
+            Log.d(LOG_TAG, "Disconnecting idle wearable data layer connection");
+            mGoogleApiClient.disconnect();
+        }
+        mIdleDisconnect = null;
+    }
+
+    synchronized void dump(PrintWriter writer, String prefix) {
+        writer.println(prefix + "connected: " + mGoogleApiClient.isConnected() + ", users: "
+                + mUsers);
+        writer.println(prefix + "connects: " + mConnects + ", reuses: " + mReuses
+                + ", failures: " + mFailures);
+        writer.println(prefix + "connect time: " + mLastConnectMillis + "ms last, "
+                + getAverageConnectMillis() + "ms average");
+    }
+
+    private long getAverageConnectMillis() {
+        return mConnects == 0 ? 0 : mTotalConnectMillis / mConnects;
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import com.example.android.sunshine.app.TodaySnapshot;
+import com.example.android.sunshine.app.WeatherDisplayModel;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.Asset;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Publishes today's weather to the wearable.
+ *
+ * Updates are published on the caller's thread, while the sync that requested them keeps the
+ * process alive.  Updates requested while another one is being published are batched: the
+ * caller publishing returns only once it published the latest of them.  Updates that would show
+ * the same thing as the last one the data layer accepted are suppressed, so the watch isn't
+ * woken up for nothing.
+ */
+class WearWeatherPublisher {
+    private static final String LOG_TAG = WearWeatherPublisher.class.getSimpleName();
+
+    // Keys of the data items read by the watch face.
+    private static final String PATH_WITH_WEATHER = "/sunshine_watch_face/Weather";
+    private static final String MAX_TEMP_KEY = "com.example.android.sunshine.app.max_temp.key";
+    private static final String MIN_TEMP_KEY = "com.example.android.sunshine.app.min_temp.key";
+    private static final String WEATHER_IMAGE_KEY = "com.example.android.sunshine.app.weather_image.key";
+    private static final String WEATHER_ID_KEY = "com.example.android.sunshine.app.weather_id.key";
+    private static final String ICON_HASH_KEY = "com.example.android.sunshine.app.icon_hash.key";
+    private static final String FORECAST_DATES_KEY = "com.example.android.sunshine.app.forecast_dates.key";
+    private static final String FORECAST_KEY = "com.example.android.sunshine.app.forecast.key";
+
+    // Bytes of each upcoming day in FORECAST_KEY: high, low and weather id, as shorts.
+    private static final int FORECAST_DAY_BYTES = 6;
+
+    private static final String PREFS_NAME = "wear_publisher";
+    private static final String ACKNOWLEDGED_DIGEST_KEY = "acknowledged_digest";
+
+    private static WearWeatherPublisher sInstance;
+
+    private final SharedPreferences mPrefs;
+    private final WearIconCache mWearIcons;
+    private final WearLinkManager mWearLink;
+
+    // The update waiting to be published.
+    private TodaySnapshot mPendingToday;
+    // Whether a caller is publishing, and will publish the pending update after its own.
+    private boolean mPublishing;
+
+    private int mBatched;
+    private int mSent;
+    private int mSuppressed;
+
+    static synchronized WearWeatherPublisher getInstance(Context context) {
+        if (null == sInstance) {
+            sInstance = new WearWeatherPublisher(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private WearWeatherPublisher(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        mWearIcons = new WearIconCache(context);
+        mWearLink = WearLinkManager.getInstance(context);
+    }
+
+    /**
+     * Publishes today's weather, unless another caller is publishing, in which case it will
+     * publish this update after its own.  Blocks, so it must not be called on the main thread.
+     */
+    void publish(TodaySnapshot today) {
+        synchronized (this) {
+            if (null != mPendingToday) {
+                // Replaces the update that was waiting
+                mBatched++;
+            }
+            mPendingToday = today;
+            if (mPublishing) {
+                return;
+            }
+            mPublishing = true;
+        }
+        while (true) {
+            TodaySnapshot pending;
+            synchronized (this) {
+                pending = mPendingToday;
+                mPendingToday = null;
+                if (null == pending) {
+                    mPublishing = false;
+                    return;
+                }
+            }
+            try {
+                publishNow(pending);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    mPublishing = false;
+                }
+                throw e;
+            }
+        }
+    }
+
+    private void publishNow(TodaySnapshot today) {
+
+        // Retrieve the weather icon bitmap, shared with the notification.
+        Bitmap iconBitmap = today.getLargeIcon();
+        String iconHash = null == iconBitmap ? null : WearIconCache.hash(iconBitmap);
+        long[] forecastDates = getForecastDates(today.upcoming);
+        byte[] forecast = packForecast(today.upcoming);
+        String digest = (int) today.row.high + "|" + (int) today.row.low + "|"
+                + today.getWeatherId() + "|" + iconHash + "|" + Arrays.toString(forecastDates)
+                + "|" + Arrays.toString(forecast);
+        if (digest.equals(mPrefs.getString(ACKNOWLEDGED_DIGEST_KEY, null))) {
+            synchronized (this) {
+                mSuppressed++;
+            }
+            logCounts();
+            return;
+        }
+
+        // Only connect when there is something to send
+        GoogleApiClient googleApiClient = mWearLink.acquire();
+        try {
+            if (null != googleApiClient && send(googleApiClient, today, iconBitmap, iconHash,
+                    forecastDates, forecast)) {
+                mPrefs.edit().putString(ACKNOWLEDGED_DIGEST_KEY, digest).apply();
+                synchronized (this) {
+                    mSent++;
+                }
+                logCounts();
+            }
+        } finally {
+            mWearLink.release();
+        }
+    }
+
+    /**
+     * Sends the weather, and the icon if the wearable doesn't have it yet.
+     *
+     * @return whether the data layer accepted the weather
+     */
+    private boolean send(GoogleApiClient googleApiClient, TodaySnapshot today, Bitmap iconBitmap,
+                         String iconHash, long[] forecastDates, byte[] forecast) {
+        // Only send the icon itself if the wearable doesn't have it yet, the weather data
+        // refers to it by its hash.
+        int iconBytes = 0;
+        if (null != iconHash && !mWearIcons.isSent(googleApiClient, iconHash)) {
+            byte[] png = WearIconCache.toPng(iconBitmap);
+            iconBytes = png.length;
+            PutDataMapRequest iconMap =
+                    PutDataMapRequest.create(WearIconCache.PATH_ICON_PREFIX + iconHash);
+            iconMap.getDataMap().putAsset(WEATHER_IMAGE_KEY, Asset.createFromBytes(png));
+            DataApi.DataItemResult iconResult = Wearable.DataApi
+                    .putDataItem(googleApiClient, iconMap.asPutDataRequest()).await();
+            if (!iconResult.getStatus().isSuccess()) {
+                Log.e(LOG_TAG, "Error sending icon: " + iconResult.getStatus());
+                return false;
+            }
+            mWearIcons.setSent(iconHash);
+        }
+
+        // Add temperatures, weather condition, icon hash and the upcoming days into data map.
+        PutDataMapRequest dataMap = PutDataMapRequest.create(PATH_WITH_WEATHER);
+        dataMap.getDataMap().putInt(MAX_TEMP_KEY, (int) today.row.high);
+        dataMap.getDataMap().putInt(MIN_TEMP_KEY, (int) today.row.low);
+        dataMap.getDataMap().putInt(WEATHER_ID_KEY, today.getWeatherId());
+        if (null != iconHash) {
+            dataMap.getDataMap().putString(ICON_HASH_KEY, iconHash);
+        }
+        dataMap.getDataMap().putLongArray(FORECAST_DATES_KEY, forecastDates);
+        dataMap.getDataMap().putByteArray(FORECAST_KEY, forecast);
+        DataApi.DataItemResult result = Wearable.DataApi
+                .putDataItem(googleApiClient, dataMap.asPutDataRequest()).await();
+        if (!result.getStatus().isSuccess()) {
+            Log.e(LOG_TAG, "Error sending weather: " + result.getStatus());
+            return false;
+        }
+        // The upcoming days cost a few bytes each, compared to an icon per day.
+        Log.d(LOG_TAG, "Sent weather to wearable, icon bytes: " + iconBytes + ", forecast bytes: "
+                + (forecastDates.length * 8 + forecast.length) + " for " + forecastDates.length
+                + " days");
+        return true;
+    }
+
+    static long[] getForecastDates(WeatherDisplayModel.Row[] days) {
+        long[] dates = new long[days.length];
+        for (int i = 0; i < days.length; i++) {
+            dates[i] = days[i].date;
+        }
+        return dates;
+    }
+
+    /**
+     * Packs the high, low and weather id of each day, in the units of the database.
+     */
+    static byte[] packForecast(WeatherDisplayModel.Row[] days) {
+        ByteBuffer buffer = ByteBuffer.allocate(days.length * FORECAST_DAY_BYTES);
+        for (WeatherDisplayModel.Row day : days) {
+            buffer.putShort((short) day.high)
+                    .putShort((short) day.low)
+                    .putShort((short) day.condition.weatherId);
+        }
+        return buffer.array();
+    }
+
+    private synchronized void logCounts() {
+        Log.d(LOG_TAG, "Wear updates sent: " + mSent + ", suppressed: " + mSuppressed
+                + ", batched: " + mBatched);
+    }
+}
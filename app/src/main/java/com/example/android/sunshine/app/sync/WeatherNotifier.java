@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.app.TaskStackBuilder;
+import android.util.Log;
+
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.TodaySnapshot;
+import com.example.android.sunshine.app.WeatherArtCache;
+import com.example.android.sunshine.app.WeatherDisplayModel;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Shows the daily weather notification.  It is built while the sync runs, so that the process
+ * is kept alive until it is shown, but the sync waits at most {@link #LARGE_ICON_DEADLINE_MILLIS}
+ * for the art pack's large icon, which is loaded on its own thread.  The bundled artwork is used
+ * if the icon isn't loaded by then.
+ */
+class WeatherNotifier {
+    private static final String LOG_TAG = WeatherNotifier.class.getSimpleName();
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final int WEATHER_NOTIFICATION_ID = 3004;
+
+    // How long the notification waits for the art pack's large icon.
+    private static final long LARGE_ICON_DEADLINE_MILLIS = 2000;
+
+    private static WeatherNotifier sInstance;
+
+    private final Context mContext;
+    // The large icon is loaded on its own thread so that a slow download can be abandoned.
+    private final ExecutorService mIconExecutor = Executors.newSingleThreadExecutor();
+    // The last large icon load, which may still run after its deadline.
+    private Future<Bitmap> mIconLoad;
+
+    static synchronized WeatherNotifier getInstance(Context context) {
+        if (null == sInstance) {
+            sInstance = new WeatherNotifier(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private WeatherNotifier(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Shows the weather notification, if notifications are enabled and the last one was shown
+     * more than a day ago.  Must not be called on the main thread.
+     */
+    synchronized void notifyWeather(TodaySnapshot today) {
+        if (isNotificationDue()) {
+            showNotification(today);
+        }
+    }
+
+    private boolean isNotificationDue() {
+        //checking the last update and notify if it' the first of the day
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String displayNotificationsKey = mContext.getString(R.string.pref_enable_notifications_key);
+        boolean displayNotifications = prefs.getBoolean(displayNotificationsKey,
+                Boolean.parseBoolean(mContext.getString(R.string.pref_enable_notifications_default)));
+        if (!displayNotifications) {
+            return false;
+        }
+        String lastNotificationKey = mContext.getString(R.string.pref_last_notification);
+        long lastSync = prefs.getLong(lastNotificationKey, 0);
+        // Only if the last notification was more than 1 day ago
+        return System.currentTimeMillis() - lastSync >= DAY_IN_MILLIS;
+    }
+
+    private void showNotification(TodaySnapshot today) {
+        WeatherDisplayModel.Row row = today.row;
+        int iconId = row.condition.iconResourceId;
+        Resources resources = mContext.getResources();
+
+        // Retrieve the large icon
+        Bitmap largeIcon = getLargeIcon(today);
+        String title = mContext.getString(R.string.app_name);
+
+        // Define the text of the forecast.
+        String contentText = String.format(mContext.getString(R.string.format_notification),
+                today.description,
+                row.highString,
+                row.lowString);
+
+        // NotificationCompatBuilder is a very convenient way to build backward-compatible
+        // notifications.  Just throw in some data.
+        NotificationCompat.Builder mBuilder =
+                new NotificationCompat.Builder(mContext)
+                        .setColor(resources.getColor(R.color.primary_light))
+                        .setSmallIcon(iconId)
+                        .setLargeIcon(largeIcon)
+                        .setContentTitle(title)
+                        .setContentText(contentText);
+
+        // Make something interesting happen when the user clicks on the notification.
+        // In this case, opening the app is sufficient.
+        Intent resultIntent = new Intent(mContext, MainActivity.class);
+
+        // The stack builder object will contain an artificial back stack for the
+        // started Activity.
+        // This ensures that navigating backward from the Activity leads out of
+        // your application to the Home screen.
+        TaskStackBuilder stackBuilder = TaskStackBuilder.create(mContext);
+        stackBuilder.addNextIntent(resultIntent);
+        PendingIntent resultPendingIntent =
+                stackBuilder.getPendingIntent(
+                        0,
+                        PendingIntent.FLAG_UPDATE_CURRENT
+                );
+        mBuilder.setContentIntent(resultPendingIntent);
+
+        NotificationManager mNotificationManager =
+                (NotificationManager) mContext.getSystemService(Context.NOTIFICATION_SERVICE);
+        // WEATHER_NOTIFICATION_ID allows you to update the notification later on.
+        mNotificationManager.notify(WEATHER_NOTIFICATION_ID, mBuilder.build());
+
+        //refreshing last sync, without waiting for the disk
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putLong(mContext.getString(R.string.pref_last_notification),
+                        System.currentTimeMillis())
+                .apply();
+    }
+
+    /**
+     * Returns the large icon of the notification, or the bundled artwork if it isn't loaded
+     * before the deadline.
+     */
+    private Bitmap getLargeIcon(final TodaySnapshot today) {
+        // An icon that is still loading after its deadline isn't waited for again, and no other
+        // load is queued behind it.
+        if (null != mIconLoad && !mIconLoad.isDone()) {
+            Log.w(LOG_TAG, "Previous large icon still loading, using bundled art");
+            return getLocalArt(today);
+        }
+        long startMillis = SystemClock.elapsedRealtime();
+        mIconLoad = mIconExecutor.submit(new Callable<Bitmap>() {
+            @Override
+            public Bitmap call() {
+                return today.getLargeIcon();
+            }
+        });
+        try {
+            Bitmap largeIcon = mIconLoad.get(LARGE_ICON_DEADLINE_MILLIS, TimeUnit.MILLISECONDS);
+            if (null != largeIcon) {
+                return largeIcon;
+            }
+        } catch (TimeoutException e) {
+            // Interrupt the load, so that it doesn't outlive the sync for long.
+            mIconLoad.cancel(true);
+            Log.w(LOG_TAG, "Large icon not loaded after "
+                    + (SystemClock.elapsedRealtime() - startMillis) + "ms, using bundled art");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(LOG_TAG, "Error loading large icon", e);
+        }
+        return getLocalArt(today);
+    }
+
+    private Bitmap getLocalArt(TodaySnapshot today) {
+        return WeatherArtCache.getInstance(mContext).getLocalArt(today.getWeatherId(),
+                TodaySnapshot.getLargeIconWidth(mContext),
+                TodaySnapshot.getLargeIconHeight(mContext));
+    }
+}
@@ -8,17 +8,25 @@ import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
 import android.util.Log;
+import android.util.SparseArray;
 import android.widget.AdapterView;
 import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
 
-import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.Target;
+import com.example.android.sunshine.app.DayLabelCache;
+import com.example.android.sunshine.app.ForecastSnapshot;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.WeatherArtCache;
+import com.example.android.sunshine.app.WeatherDisplayModel;
 import com.example.android.sunshine.app.data.WeatherContract;
 
+import java.util.HashMap;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * RemoteViewsService controlling the data being shown in the scrollable weather detail widget
@@ -27,36 +35,68 @@ import java.util.concurrent.ExecutionException;
 public class DetailWidgetRemoteViewsService extends RemoteViewsService {
     public final String LOG_TAG = DetailWidgetRemoteViewsService.class.getSimpleName();
     private static final String[] FORECAST_COLUMNS = {
-            WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
             WeatherContract.WeatherEntry.COLUMN_DATE,
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
             WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
             WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
     };
     // these indices must match the projection
-    static final int INDEX_WEATHER_ID = 0;
-    static final int INDEX_WEATHER_DATE = 1;
-    static final int INDEX_WEATHER_CONDITION_ID = 2;
-    static final int INDEX_WEATHER_DESC = 3;
-    static final int INDEX_WEATHER_MAX_TEMP = 4;
-    static final int INDEX_WEATHER_MIN_TEMP = 5;
+    static final int INDEX_WEATHER_DATE = 0;
+    static final int INDEX_WEATHER_CONDITION_ID = 1;
+    static final int INDEX_WEATHER_MAX_TEMP = 2;
+    static final int INDEX_WEATHER_MIN_TEMP = 3;
+
+    // Number of artworks loaded concurrently when the widget data changes.
+    private static final int PREFETCH_THREADS = 3;
+
+    private static final WidgetRow[] NO_ROWS = new WidgetRow[0];
+
+    /**
+     * Everything needed to build the views of a widget row, computed when the data changes.
+     */
+    private static class WidgetRow {
+        final long id;
+        final int weatherId;
+        final int iconResourceId;
+        // Whether the row shows the art pack's artwork rather than the bundled icon.
+        final boolean useArtPack;
+        final String date;
+        final String description;
+        final String high;
+        final String low;
+        final Intent fillInIntent;
+
+        WidgetRow(long id, int weatherId, int iconResourceId, boolean useArtPack, String date,
+                  String description, String high, String low, Intent fillInIntent) {
+            this.id = id;
+            this.weatherId = weatherId;
+            this.iconResourceId = iconResourceId;
+            this.useArtPack = useArtPack;
+            this.date = date;
+            this.description = description;
+            this.high = high;
+            this.low = low;
+            this.fillInIntent = fillInIntent;
+        }
+    }
 
     @Override
     public RemoteViewsFactory onGetViewFactory(Intent intent) {
         return new RemoteViewsFactory() {
-            private Cursor data = null;
+            private WidgetRow[] rows = NO_ROWS;
+            // Art pack bitmaps by weather condition id, prefetched when the data changes.
+            private final SparseArray<Bitmap> art = new SparseArray<Bitmap>();
+            private ExecutorService prefetchExecutor;
+            private int iconSize;
 
             @Override
             public void onCreate() {
-                // Nothing to do
+                iconSize = getResources().getDimensionPixelSize(R.dimen.list_icon);
+                prefetchExecutor = Executors.newFixedThreadPool(PREFETCH_THREADS);
             }
 
             @Override
             public void onDataSetChanged() {
-                if (data != null) {
-                    data.close();
-                }
                 // This method is called by the app hosting the widget (e.g., the launcher)
                 // However, our ContentProvider is not exported so it doesn't have access to the
                 // data. Therefore we need to clear (and finally restore) the calling identity so
@@ -65,82 +105,151 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                 String location = Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
                 Uri weatherForLocationUri = WeatherContract.WeatherEntry
                         .buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
-                data = getContentResolver().query(weatherForLocationUri,
+                Cursor data = getContentResolver().query(weatherForLocationUri,
                         FORECAST_COLUMNS,
                         null,
                         null,
                         WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
                 Binder.restoreCallingIdentity(identityToken);
+                if (data == null) {
+                    rows = NO_ROWS;
+                } else {
+                    rows = buildRows(data, location);
+                    data.close();
+                }
+                prefetchArt();
+            }
+
+            /**
+             * Copies the cursor into immutable rows with everything getViewAt needs, so that
+             * the cursor doesn't have to stay open.
+             */
+            private WidgetRow[] buildRows(Cursor data, String location) {
+                WeatherDisplayModel displayModel =
+                        WeatherDisplayModel.getInstance(DetailWidgetRemoteViewsService.this);
+                DayLabelCache dayLabels = DayLabelCache.getInstance(DetailWidgetRemoteViewsService.this);
+                WidgetRow[] newRows = new WidgetRow[data.getCount()];
+                for (int i = 0; i < newRows.length && data.moveToPosition(i); i++) {
+                    long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
+                    WeatherDisplayModel.Row row = displayModel.getRow(dateInMillis,
+                            data.getInt(INDEX_WEATHER_CONDITION_ID),
+                            data.getDouble(INDEX_WEATHER_MAX_TEMP),
+                            data.getDouble(INDEX_WEATHER_MIN_TEMP));
+
+                    final Intent fillInIntent = new Intent();
+                    Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                            location,
+                            dateInMillis);
+                    fillInIntent.setData(weatherUri);
+
+                    newRows[i] = new WidgetRow(
+                            ForecastSnapshot.getStableId(location, dateInMillis),
+                            row.condition.weatherId,
+                            row.condition.iconResourceId,
+                            null != row.condition.artUrl,
+                            dayLabels.getFriendlyDayString(dateInMillis, false),
+                            row.condition.description,
+                            row.highString,
+                            row.lowString,
+                            fillInIntent);
+                }
+                return newRows;
+            }
+
+            /**
+             * Loads the art pack bitmaps of every row in parallel, so that getViewAt doesn't
+             * block on the network.  Rows with the same condition class share their bitmap.
+             */
+            private void prefetchArt() {
+                art.clear();
+                final WeatherArtCache artCache =
+                        WeatherArtCache.getInstance(DetailWidgetRemoteViewsService.this);
+                HashMap<String, Future<Bitmap>> loadsByClass = new HashMap<String, Future<Bitmap>>();
+                SparseArray<Future<Bitmap>> loads = new SparseArray<Future<Bitmap>>();
+                for (WidgetRow row : rows) {
+                    final int weatherId = row.weatherId;
+                    String artClass = Utility.getArtClassForWeatherCondition(weatherId);
+                    if (!row.useArtPack || null == artClass || null != loads.get(weatherId)) {
+                        continue;
+                    }
+                    Future<Bitmap> load = loadsByClass.get(artClass);
+                    if (null == load) {
+                        load = prefetchExecutor.submit(new Callable<Bitmap>() {
+                            @Override
+                            public Bitmap call() {
+                                return artCache.getRemoteArt(weatherId, iconSize, iconSize);
+                            }
+                        });
+                        loadsByClass.put(artClass, load);
+                    }
+                    loads.put(weatherId, load);
+                }
+                if (loads.size() == 0) {
+                    return;
+                }
+                for (int i = 0; i < loads.size(); i++) {
+                    try {
+                        Bitmap bitmap = loads.valueAt(i).get();
+                        if (null != bitmap) {
+                            art.put(loads.keyAt(i), bitmap);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    } catch (ExecutionException e) {
+                        Log.e(LOG_TAG, "Error prefetching art", e);
+                    }
+                }
+
+                // Every row parcels its own copy of the bitmap to the host.
+                long bitmapBytes = 0;
+                for (WidgetRow row : rows) {
+                    Bitmap bitmap = art.get(row.weatherId);
+                    if (row.useArtPack && null != bitmap) {
+                        bitmapBytes += bitmap.getByteCount();
+                    }
+                }
+                Log.d(LOG_TAG, "Widget update: " + rows.length + " rows, "
+                        + loadsByClass.size() + " artworks, " + bitmapBytes + " bitmap bytes");
             }
 
             @Override
             public void onDestroy() {
-                if (data != null) {
-                    data.close();
-                    data = null;
-                }
+                rows = NO_ROWS;
+                art.clear();
+                prefetchExecutor.shutdownNow();
             }
 
             @Override
             public int getCount() {
-                return data == null ? 0 : data.getCount();
+                return rows.length;
             }
 
             @Override
             public RemoteViews getViewAt(int position) {
-                if (position == AdapterView.INVALID_POSITION ||
-                        data == null || !data.moveToPosition(position)) {
+                if (position == AdapterView.INVALID_POSITION || position >= rows.length) {
                     return null;
                 }
+                WidgetRow row = rows[position];
                 RemoteViews views = new RemoteViews(getPackageName(),
                         R.layout.widget_detail_list_item);
-                int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
-                int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
                 Bitmap weatherArtImage = null;
-                if ( !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this) ) {
-                    String weatherArtResourceUrl = Utility.getArtUrlForWeatherCondition(
-                            DetailWidgetRemoteViewsService.this, weatherId);
-                    try {
-                        weatherArtImage = Glide.with(DetailWidgetRemoteViewsService.this)
-                                .load(weatherArtResourceUrl)
-                                .asBitmap()
-                                .error(weatherArtResourceId)
-                                .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + weatherArtResourceUrl, e);
-                    }
+                if ( row.useArtPack ) {
+                    weatherArtImage = art.get(row.weatherId);
                 }
-                String description = data.getString(INDEX_WEATHER_DESC);
-                long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
-                String formattedDate = Utility.getFriendlyDayString(
-                        DetailWidgetRemoteViewsService.this, dateInMillis, false);
-                double maxTemp = data.getDouble(INDEX_WEATHER_MAX_TEMP);
-                double minTemp = data.getDouble(INDEX_WEATHER_MIN_TEMP);
-                String formattedMaxTemperature =
-                        Utility.formatTemperature(DetailWidgetRemoteViewsService.this, maxTemp);
-                String formattedMinTemperature =
-                        Utility.formatTemperature(DetailWidgetRemoteViewsService.this, minTemp);
                 if (weatherArtImage != null) {
                     views.setImageViewBitmap(R.id.widget_icon, weatherArtImage);
                 } else {
-                    views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
+                    views.setImageViewResource(R.id.widget_icon, row.iconResourceId);
                 }
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
-                    setRemoteContentDescription(views, description);
+                    setRemoteContentDescription(views, row.description);
                 }
-                views.setTextViewText(R.id.widget_date, formattedDate);
-                views.setTextViewText(R.id.widget_description, description);
-                views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
-                views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
-
-                final Intent fillInIntent = new Intent();
-                String locationSetting =
-                        Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
-                Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
-                        locationSetting,
-                        dateInMillis);
-                fillInIntent.setData(weatherUri);
-                views.setOnClickFillInIntent(R.id.widget_list_item, fillInIntent);
+                views.setTextViewText(R.id.widget_date, row.date);
+                views.setTextViewText(R.id.widget_description, row.description);
+                views.setTextViewText(R.id.widget_high_temperature, row.high);
+                views.setTextViewText(R.id.widget_low_temperature, row.low);
+                views.setOnClickFillInIntent(R.id.widget_list_item, row.fillInIntent);
                 return views;
             }
 
@@ -161,8 +270,8 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
 
             @Override
             public long getItemId(int position) {
-                if (data.moveToPosition(position))
-                    return data.getLong(INDEX_WEATHER_ID);
+                if (position < rows.length)
+                    return rows[position].id;
                 return position;
             }
 
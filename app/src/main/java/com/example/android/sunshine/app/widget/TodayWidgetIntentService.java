@@ -20,35 +20,40 @@ import android.app.IntentService;
 import android.app.PendingIntent;
 import android.appwidget.AppWidgetManager;
 import android.content.ComponentName;
+import android.content.Context;
 import android.content.Intent;
-import android.database.Cursor;
-import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.util.DisplayMetrics;
+import android.util.Log;
 import android.util.TypedValue;
 import android.widget.RemoteViews;
 
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
-import com.example.android.sunshine.app.Utility;
-import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.TodaySnapshot;
+import com.example.android.sunshine.app.WeatherDisplayModel;
+
+import java.util.Arrays;
 
 /**
- * IntentService which handles updating all Today widgets with the latest data
+ * IntentService which handles updating all Today widgets with the latest data.  Widgets already
+ * showing the latest data are skipped, unless {@link WidgetRefreshCoordinator#EXTRA_FORCE} is
+ * set.  The widgets to update can be restricted with
+ * {@link AppWidgetManager#EXTRA_APPWIDGET_IDS}.
  */
 public class TodayWidgetIntentService extends IntentService {
-    private static final String[] FORECAST_COLUMNS = {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    private static final String LOG_TAG = TodayWidgetIntentService.class.getSimpleName();
+    // Widgets are grouped by layout, which depends on their width
+    private static final int BUCKET_SMALL = 0;
+    private static final int BUCKET_DEFAULT = 1;
+    private static final int BUCKET_LARGE = 2;
+    // these layouts must match the bucket indices
+    private static final int[] BUCKET_LAYOUTS = {
+            R.layout.widget_today_small,
+            R.layout.widget_today,
+            R.layout.widget_today_large
     };
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_SHORT_DESC = 1;
-    private static final int INDEX_MAX_TEMP = 2;
-    private static final int INDEX_MIN_TEMP = 3;
 
     public TodayWidgetIntentService() {
         super("TodayWidgetIntentService");
@@ -56,50 +61,67 @@ public class TodayWidgetIntentService extends IntentService {
 
     @Override
     protected void onHandleIntent(Intent intent) {
-        // Retrieve all of the Today widget ids: these are the widgets we need to update
+        // Retrieve all of the Today widget ids, unless we were asked to update specific ones
         AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(this);
-        int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
-                TodayWidgetProvider.class));
-
-        // Get today's data from the ContentProvider
-        String location = Utility.getPreferredLocation(this);
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
-        Cursor data = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
-                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-        if (data == null) {
-            return;
+        int[] appWidgetIds = intent.getIntArrayExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS);
+        if (null == appWidgetIds) {
+            appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
+                    TodayWidgetProvider.class));
         }
-        if (!data.moveToFirst()) {
-            data.close();
+        boolean force = intent.getBooleanExtra(WidgetRefreshCoordinator.EXTRA_FORCE, false);
+
+        // Get today's data, as read by the last sync
+        TodaySnapshot today = TodaySnapshot.getLatest(this);
+        if (null == today) {
             return;
         }
+        WeatherDisplayModel.Row row = today.row;
+        int weatherArtResourceId = row.condition.artResourceId;
+        String description = today.description;
+        String formattedMaxTemperature = row.highString;
+        String formattedMinTemperature = row.lowString;
 
-        // Extract the weather data from the Cursor
-        int weatherId = data.getInt(INDEX_WEATHER_ID);
-        int weatherArtResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-        String description = data.getString(INDEX_SHORT_DESC);
-        double maxTemp = data.getDouble(INDEX_MAX_TEMP);
-        double minTemp = data.getDouble(INDEX_MIN_TEMP);
-        String formattedMaxTemperature = Utility.formatTemperature(this, maxTemp);
-        String formattedMinTemperature = Utility.formatTemperature(this, minTemp);
-        data.close();
-
-        // Perform this loop procedure for each Today widget
+        WidgetRefreshCoordinator coordinator = new WidgetRefreshCoordinator(this);
+        String digest = WidgetRefreshCoordinator.digest(weatherArtResourceId, description,
+                formattedMaxTemperature, formattedMinTemperature);
+        long startNanos = System.nanoTime();
+
+        // Sort the widgets that need an update into buckets, one per layout. Widgets in the same
+        // bucket display exactly the same views, so they can share them.
+        int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+        int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
+        int[][] bucketIds = new int[BUCKET_LAYOUTS.length][appWidgetIds.length];
+        int[] bucketSizes = new int[BUCKET_LAYOUTS.length];
+        int skipped = 0;
         for (int appWidgetId : appWidgetIds) {
+            if (!force && !coordinator.hasChanged(appWidgetId, digest)) {
+                skipped++;
+                continue;
+            }
             // Find the correct layout based on the widget's width
-            int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetId);
-            int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
-            int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
-            int layoutId;
+            int widgetWidth = getWidgetWidth(appWidgetManager, coordinator, appWidgetId);
+            int bucket;
             if (widgetWidth >= largeWidth) {
-                layoutId = R.layout.widget_today_large;
+                bucket = BUCKET_LARGE;
             } else if (widgetWidth >= defaultWidth) {
-                layoutId = R.layout.widget_today;
+                bucket = BUCKET_DEFAULT;
             } else {
-                layoutId = R.layout.widget_today_small;
+                bucket = BUCKET_SMALL;
+            }
+            bucketIds[bucket][bucketSizes[bucket]++] = appWidgetId;
+        }
+
+        // Create an Intent to launch MainActivity
+        Intent launchIntent = new Intent(this, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
+
+        int bucketsUsed = 0;
+        for (int bucket = 0; bucket < BUCKET_LAYOUTS.length; bucket++) {
+            if (bucketSizes[bucket] == 0) {
+                continue;
             }
-            RemoteViews views = new RemoteViews(getPackageName(), layoutId);
+            bucketsUsed++;
+            RemoteViews views = new RemoteViews(getPackageName(), BUCKET_LAYOUTS[bucket]);
 
             // Add the data to the RemoteViews
             views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
@@ -110,38 +132,51 @@ public class TodayWidgetIntentService extends IntentService {
             views.setTextViewText(R.id.widget_description, description);
             views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
             views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
-
-            // Create an Intent to launch MainActivity
-            Intent launchIntent = new Intent(this, MainActivity.class);
-            PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
             views.setOnClickPendingIntent(R.id.widget, pendingIntent);
 
-            // Tell the AppWidgetManager to perform an update on the current app widget
-            appWidgetManager.updateAppWidget(appWidgetId, views);
+            // Tell the AppWidgetManager to perform an update on every app widget of the bucket
+            int[] ids = Arrays.copyOf(bucketIds[bucket], bucketSizes[bucket]);
+            appWidgetManager.updateAppWidget(ids, views);
+            for (int appWidgetId : ids) {
+                coordinator.setRendered(appWidgetId, digest);
+            }
         }
+        Log.d(LOG_TAG, "Today widgets updated: " + (appWidgetIds.length - skipped)
+                + ", unchanged: " + skipped + ", layouts built: " + bucketsUsed + ", took "
+                + (System.nanoTime() - startNanos) / 1000 + "us");
     }
 
-    private int getWidgetWidth(AppWidgetManager appWidgetManager, int appWidgetId) {
+    private int getWidgetWidth(AppWidgetManager appWidgetManager,
+                               WidgetRefreshCoordinator coordinator, int appWidgetId) {
         // Prior to Jelly Bean, widgets were always their default size
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
             return getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
         }
         // For Jelly Bean and higher devices, widgets can be resized - the current size can be
-        // retrieved from the newly added App Widget Options
-        return getWidgetWidthFromOptions(appWidgetManager, appWidgetId);
+        // retrieved from the newly added App Widget Options. The provider caches it whenever
+        // the options change, so they only need to be read for widgets we don't know yet.
+        int width = coordinator.getWidgetWidth(appWidgetId);
+        if (width == 0) {
+            width = getWidgetWidthFromOptions(this,
+                    appWidgetManager.getAppWidgetOptions(appWidgetId));
+            coordinator.setWidgetWidth(appWidgetId, width);
+        }
+        return width;
     }
 
+    /**
+     * Returns the width of a widget in pixels, from its App Widget Options.
+     */
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
-    private int getWidgetWidthFromOptions(AppWidgetManager appWidgetManager, int appWidgetId) {
-        Bundle options = appWidgetManager.getAppWidgetOptions(appWidgetId);
+    static int getWidgetWidthFromOptions(Context context, Bundle options) {
         if (options.containsKey(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH)) {
             int minWidthDp = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH);
             // The width returned is in dp, but we'll convert it to pixels to match the other widths
-            DisplayMetrics displayMetrics = getResources().getDisplayMetrics();
+            DisplayMetrics displayMetrics = context.getResources().getDisplayMetrics();
             return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, minWidthDp,
                     displayMetrics);
         }
-        return  getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+        return context.getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
     }
 
     @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
@@ -34,20 +34,35 @@ public class TodayWidgetProvider extends AppWidgetProvider {
 
     @Override
     public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
-        context.startService(new Intent(context, TodayWidgetIntentService.class));
+        // The host asked for these widgets to be updated, whatever they were showing before
+        startForcedUpdate(context, appWidgetIds);
     }
 
     @Override
     public void onAppWidgetOptionsChanged(Context context, AppWidgetManager appWidgetManager,
                                           int appWidgetId, Bundle newOptions) {
-        context.startService(new Intent(context, TodayWidgetIntentService.class));
+        // The widget may need a different layout for its new size
+        new WidgetRefreshCoordinator(context).setWidgetWidth(appWidgetId,
+                TodayWidgetIntentService.getWidgetWidthFromOptions(context, newOptions));
+        startForcedUpdate(context, new int[] { appWidgetId });
+    }
+
+    @Override
+    public void onDeleted(Context context, int[] appWidgetIds) {
+        new WidgetRefreshCoordinator(context).forget(appWidgetIds);
     }
 
     @Override
     public void onReceive(@NonNull Context context, @NonNull Intent intent) {
         super.onReceive(context, intent);
         if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())) {
-            context.startService(new Intent(context, TodayWidgetIntentService.class));
+            WidgetRefreshCoordinator.requestRefresh(context);
         }
     }
+
+    private void startForcedUpdate(Context context, int[] appWidgetIds) {
+        context.startService(new Intent(context, TodayWidgetIntentService.class)
+                .putExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS, appWidgetIds)
+                .putExtra(WidgetRefreshCoordinator.EXTRA_FORCE, true));
+    }
 }
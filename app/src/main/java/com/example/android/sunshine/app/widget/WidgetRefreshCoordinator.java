@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.util.Base64;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Keeps track of what each widget last rendered, so that widget updates can be skipped when
+ * nothing visible changed, and of the widget widths reported by their options.  Refresh requests
+ * are funnelled through {@link WidgetRefreshService}, which coalesces bursts of data updates.
+ *
+ * The digests are stored in their own preferences file, since the launcher keeps showing the
+ * last update after our process dies.
+ */
+public class WidgetRefreshCoordinator {
+
+    /**
+     * Extra for the widget update services: when true, widgets are updated even if their content
+     * didn't change (for instance when they were resized, or re-created by the host).
+     */
+    public static final String EXTRA_FORCE = "com.example.android.sunshine.app.widget.extra.FORCE";
+
+    private static final String PREFS_NAME = "widget_refresh";
+    private static final String DIGEST_KEY_PREFIX = "digest_";
+    private static final String WIDTH_KEY_PREFIX = "width_";
+
+    // Separates the parts of a digest, so that ("ab", "c") and ("a", "bc") differ.
+    private static final char PART_SEPARATOR = '\u001f';
+
+    private final SharedPreferences mPrefs;
+
+    public WidgetRefreshCoordinator(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Asks for every widget to be refreshed with the latest data.  Requests made in quick
+     * succession are coalesced into a single refresh.
+     */
+    public static void requestRefresh(Context context) {
+        context.startService(new Intent(context, WidgetRefreshService.class));
+    }
+
+    /**
+     * Returns whether a widget last rendered content with a different digest.
+     */
+    public boolean hasChanged(int appWidgetId, String digest) {
+        return !digest.equals(mPrefs.getString(DIGEST_KEY_PREFIX + appWidgetId, null));
+    }
+
+    /**
+     * Records the digest of the content a widget has just been updated with.
+     */
+    public void setRendered(int appWidgetId, String digest) {
+        mPrefs.edit().putString(DIGEST_KEY_PREFIX + appWidgetId, digest).apply();
+    }
+
+    /**
+     * Returns the width in pixels of a widget, as last reported by its options, or 0 if unknown.
+     */
+    public int getWidgetWidth(int appWidgetId) {
+        return mPrefs.getInt(WIDTH_KEY_PREFIX + appWidgetId, 0);
+    }
+
+    public void setWidgetWidth(int appWidgetId, int width) {
+        mPrefs.edit().putInt(WIDTH_KEY_PREFIX + appWidgetId, width).apply();
+    }
+
+    /**
+     * Forgets about widgets that have been deleted.
+     */
+    public void forget(int[] appWidgetIds) {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        for (int appWidgetId : appWidgetIds) {
+            editor.remove(DIGEST_KEY_PREFIX + appWidgetId);
+            editor.remove(WIDTH_KEY_PREFIX + appWidgetId);
+        }
+        editor.apply();
+    }
+
+    /**
+     * Computes a digest of the values a widget displays.
+     */
+    public static String digest(Object... parts) {
+        StringBuilder content = new StringBuilder();
+        for (Object part : parts) {
+            content.append(part).append(PART_SEPARATOR);
+        }
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = messageDigest.digest(content.toString().getBytes("UTF-8"));
+            return Base64.encodeToString(hash, Base64.NO_WRAP);
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            // Both are guaranteed to be available, but fall back to the content itself.
+            return content.toString();
+        }
+    }
+}
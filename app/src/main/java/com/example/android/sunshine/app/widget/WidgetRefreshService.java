@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.app.IntentService;
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.Intent;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.sunshine.app.DayLabelCache;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.WeatherDisplayModel;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * IntentService which refreshes every widget after the weather data changed.  Bursts of
+ * requests are coalesced: a request is dropped if another one was made after it, and the last
+ * one waits a little for more requests before refreshing.  Widgets whose content didn't change are not updated.
+ */
+public class WidgetRefreshService extends IntentService {
+    private static final String LOG_TAG = WidgetRefreshService.class.getSimpleName();
+
+    // How long a request waits for more requests before refreshing the widgets.
+    private static final long DEBOUNCE_MILLIS = 500;
+
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    };
+    // these indices must match the projection
+    private static final int INDEX_WEATHER_DATE = 0;
+    private static final int INDEX_WEATHER_ID = 1;
+    private static final int INDEX_MAX_TEMP = 2;
+    private static final int INDEX_MIN_TEMP = 3;
+
+    // Requests that have been made but not handled yet.
+    private static final AtomicInteger sPendingRequests = new AtomicInteger();
+
+    public WidgetRefreshService() {
+        super("WidgetRefreshService");
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        sPendingRequests.incrementAndGet();
+        return super.onStartCommand(intent, flags, startId);
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        // Requests queued behind this one are dropped without waiting, so that a burst only
+        // waits once for its last request.
+        if (sPendingRequests.get() == 1) {
+            SystemClock.sleep(DEBOUNCE_MILLIS);
+        }
+        if (sPendingRequests.decrementAndGet() > 0) {
+            // A later request is queued, and will refresh the widgets with the latest data.
+            Log.d(LOG_TAG, "Coalesced widget refresh request");
+            return;
+        }
+
+        // The Today widget service compares what it renders with what each widget shows.
+        startService(new Intent(this, TodayWidgetIntentService.class));
+
+        refreshDetailWidgets();
+    }
+
+    private void refreshDetailWidgets() {
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(this);
+        int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
+                DetailWidgetProvider.class));
+        if (appWidgetIds.length == 0) {
+            return;
+        }
+
+        String listDigest = computeListDigest();
+        if (null == listDigest) {
+            return;
+        }
+        WidgetRefreshCoordinator coordinator = new WidgetRefreshCoordinator(this);
+        int[] changedIds = new int[appWidgetIds.length];
+        int changedCount = 0;
+        for (int appWidgetId : appWidgetIds) {
+            if (coordinator.hasChanged(appWidgetId, listDigest)) {
+                changedIds[changedCount++] = appWidgetId;
+                coordinator.setRendered(appWidgetId, listDigest);
+            }
+        }
+        if (changedCount > 0) {
+            appWidgetManager.notifyAppWidgetViewDataChanged(
+                    Arrays.copyOf(changedIds, changedCount), R.id.widget_list);
+        }
+        Log.d(LOG_TAG, "Detail widgets refreshed: " + changedCount + ", unchanged: "
+                + (appWidgetIds.length - changedCount));
+    }
+
+    /**
+     * Computes a digest of what the Detail widget list displays, or null if the data can't be
+     * read.
+     */
+    private String computeListDigest() {
+        String location = Utility.getPreferredLocation(this);
+        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                location, System.currentTimeMillis());
+        Cursor data = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
+                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (data == null) {
+            return null;
+        }
+        WeatherDisplayModel displayModel = WeatherDisplayModel.getInstance(this);
+        DayLabelCache dayLabels = DayLabelCache.getInstance(this);
+        Object[] parts = new Object[1 + data.getCount() * 6];
+        int part = 0;
+        parts[part++] = location;
+        while (data.moveToNext()) {
+            long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
+            WeatherDisplayModel.Row row = displayModel.getRow(dateInMillis,
+                    data.getInt(INDEX_WEATHER_ID),
+                    data.getDouble(INDEX_MAX_TEMP),
+                    data.getDouble(INDEX_MIN_TEMP));
+            parts[part++] = dayLabels.getFriendlyDayString(dateInMillis, false);
+            parts[part++] = row.condition.description;
+            parts[part++] = row.condition.iconResourceId;
+            parts[part++] = row.condition.artUrl;
+            parts[part++] = row.highString;
+            parts[part++] = row.lowString;
+        }
+        data.close();
+        return WidgetRefreshCoordinator.digest(parts);
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+
+import java.nio.ByteBuffer;
+
+public class TestForecastStrip extends AndroidTestCase {
+
+    private static final long TEST_START_DATE = 1419033600000L;  // December 20th, 2014
+    private static final int FORECAST_DAYS = 4;
+    private static final int TILE_WIDTH = 36;
+    private static final int TILE_HEIGHT = 22;
+
+    public void testSetDaysReportsChanges() {
+        ForecastStrip strip = createStrip();
+        assertTrue("Error: A new strip should be empty", strip.isEmpty());
+
+        assertTrue("Error: Setting days should report a change",
+                strip.setDays(createDates(0), createForecast(0)));
+        assertFalse("Error: A strip with days shouldn't be empty", strip.isEmpty());
+        assertFalse("Error: Setting the same days again shouldn't report a change",
+                strip.setDays(createDates(0), createForecast(0)));
+        assertTrue("Error: A revised forecast should report a change",
+                strip.setDays(createDates(0), createForecast(1)));
+        assertTrue("Error: Moving to the next days should report a change",
+                strip.setDays(createDates(1), createForecast(1)));
+
+        // A forecast that doesn't match its dates is dropped.
+        assertTrue("Error: An invalid forecast should clear the strip",
+                strip.setDays(createDates(0), new byte[5]));
+        assertTrue("Error: An invalid forecast should leave the strip empty", strip.isEmpty());
+    }
+
+    /*
+        The watch face saves the strip with the rest of the weather, and restores it when it is
+        created again, before the handheld is connected.
+     */
+    public void testStateRoundTrip() {
+        ForecastStrip strip = createStrip();
+        strip.setDays(createDates(0), createForecast(0));
+        String state = strip.saveState();
+
+        ForecastStrip restored = createStrip();
+        restored.restoreState(state);
+        assertFalse("Error: The restored strip shouldn't be empty", restored.isEmpty());
+        assertEquals("Error: The restored strip should save the same state",
+                state, restored.saveState());
+        assertFalse("Error: The restored strip should have the same days",
+                restored.setDays(createDates(0), createForecast(0)));
+
+        ForecastStrip emptyRestored = createStrip();
+        emptyRestored.restoreState(createStrip().saveState());
+        assertTrue("Error: An empty strip should be restored empty", emptyRestored.isEmpty());
+
+        ForecastStrip notSaved = createStrip();
+        notSaved.restoreState(null);
+        assertTrue("Error: A strip without saved state should be empty", notSaved.isEmpty());
+    }
+
+    /*
+        After midnight, or when the strip is restored days after it was saved, the days that have
+        passed shouldn't be drawn.
+     */
+    public void testPassedDaysAreSkipped() {
+        long[] dates = createDates(0);
+        ForecastStrip strip = createStrip();
+        strip.setDays(dates, createForecast(0));
+
+        strip.setFirstDay(dates[0]);
+        assertEquals("Error: Every day should be drawn while the first one hasn't passed",
+                FORECAST_DAYS * TILE_WIDTH, drawnWidth(strip));
+        strip.setFirstDay(dates[1]);
+        assertEquals("Error: The first day should be skipped after it passed",
+                (FORECAST_DAYS - 1) * TILE_WIDTH, drawnWidth(strip));
+        strip.setFirstDay(dates[FORECAST_DAYS - 1] + DateUtils.DAY_IN_MILLIS);
+        assertTrue("Error: The strip should be empty once every day passed", strip.isEmpty());
+
+        // The first day to show still applies to the next days received.
+        strip.setDays(createDates(FORECAST_DAYS), createForecast(0));
+        assertFalse("Error: Upcoming days should be shown", strip.isEmpty());
+        strip.setDays(dates, createForecast(0));
+        assertTrue("Error: Days that have passed shouldn't be shown", strip.isEmpty());
+        strip.release();
+    }
+
+    /**
+     * Draws the strip on a transparent frame, and returns the width of the tiles it drew text in.
+     */
+    private static int drawnWidth(ForecastStrip strip) {
+        int frameWidth = (FORECAST_DAYS + 1) * TILE_WIDTH;
+        Bitmap frame = Bitmap.createBitmap(frameWidth, TILE_HEIGHT, Bitmap.Config.ARGB_8888);
+        Paint paint = new Paint();
+        paint.setColor(Color.WHITE);
+        paint.setTextAlign(Paint.Align.CENTER);
+        Canvas canvas = new Canvas(frame);
+        strip.invalidate();
+        strip.draw(canvas, 0, 0, paint, paint);
+
+        int width = 0;
+        for (int x = frameWidth - 1; x >= 0 && width == 0; x--) {
+            for (int y = 0; y < TILE_HEIGHT; y++) {
+                if (Color.alpha(frame.getPixel(x, y)) != 0) {
+                    width = (x / TILE_WIDTH + 1) * TILE_WIDTH;
+                    break;
+                }
+            }
+        }
+        frame.recycle();
+        return width;
+    }
+
+    private ForecastStrip createStrip() {
+        return new ForecastStrip(TILE_WIDTH, TILE_HEIGHT,
+                mContext.getString(R.string.format_temperature));
+    }
+
+    private static long[] createDates(int firstDay) {
+        long[] dates = new long[FORECAST_DAYS];
+        for (int i = 0; i < FORECAST_DAYS; i++) {
+            dates[i] = TEST_START_DATE + (firstDay + i) * DateUtils.DAY_IN_MILLIS;
+        }
+        return dates;
+    }
+
+    private static byte[] createForecast(int revision) {
+        ByteBuffer forecast = ByteBuffer.allocate(FORECAST_DAYS * 6);
+        for (int i = 0; i < FORECAST_DAYS; i++) {
+            forecast.putShort((short) (20 + i + revision))
+                    .putShort((short) (10 - i))
+                    .putShort((short) 800);
+        }
+        return forecast.array();
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+
+/*
+    The watch face engine can only be created by a wallpaper connection, so these tests draw
+    frames with the renderer the engine's onDraw delegates to.
+ */
+public class TestWatchFaceFrames extends AndroidTestCase {
+    public static final String LOG_TAG = TestWatchFaceFrames.class.getSimpleName();
+
+    private static final int FRAME_SIZE = 320;
+    private static final int FRAME_COUNT = 100;
+    // Frames are a quarter of a second apart, so the colons blink and every frame of a run is
+    // drawn in the same minute.
+    private static final long FRAME_INTERVAL_MILLIS = 250;
+    private static final int FORECAST_DAYS = 4;
+    // Frames with a valid layer should take well under a frame at 60 fps on average.
+    private static final long FRAME_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(16);
+
+    private WatchFaceRenderer mRenderer;
+    private Rect mBounds;
+    private Bitmap mFrame;
+    private Canvas mCanvas;
+    // Start of the minute the frames are drawn in.
+    private long mMinuteStart;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mRenderer = new WatchFaceRenderer(mContext);
+        mRenderer.setShape(false);
+        mRenderer.setBlinkColons(true);
+        mRenderer.setTemperatures(21, 12);
+
+        long now = System.currentTimeMillis();
+        long[] dates = new long[FORECAST_DAYS];
+        ByteBuffer forecast = ByteBuffer.allocate(FORECAST_DAYS * 6);
+        for (int i = 0; i < FORECAST_DAYS; i++) {
+            dates[i] = now + (i + 1) * DateUtils.DAY_IN_MILLIS;
+            forecast.putShort((short) (20 + i)).putShort((short) (10 + i)).putShort((short) 800);
+        }
+        mRenderer.getForecastStrip().setDays(dates, forecast.array());
+        mMinuteStart = now - now % DateUtils.MINUTE_IN_MILLIS;
+
+        mBounds = new Rect(0, 0, FRAME_SIZE, FRAME_SIZE);
+        mFrame = Bitmap.createBitmap(FRAME_SIZE, FRAME_SIZE, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mFrame);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mRenderer.release();
+        mFrame.recycle();
+        super.tearDown();
+    }
+
+    /*
+        Once the time is formatted and the static layer and the forecast tiles are drawn, frames
+        only composite bitmaps and draw preformatted text, and shouldn't allocate, in any mode.
+     */
+    public void testFramesDoNotAllocate() {
+        int[] modes = {WatchFaceLayout.MODE_INTERACTIVE, WatchFaceLayout.MODE_AMBIENT,
+                WatchFaceLayout.MODE_MUTE};
+        for (int mode : modes) {
+            setMode(mode);
+            mRenderer.draw(mCanvas, mBounds, mMinuteStart);
+
+            int allocations = countFrameAllocations(mMinuteStart, FRAME_COUNT);
+            assertEquals("Error: Frames shouldn't allocate in mode " + mode, 0, allocations);
+        }
+    }
+
+    /*
+        Drawing the static layer again allocates the forecast tiles' formatting, so it should
+        only happen after the layer was invalidated.
+     */
+    public void testStaticLayerIsOnlyDrawnWhenInvalid() {
+        mRenderer.draw(mCanvas, mBounds, mMinuteStart);
+
+        mRenderer.invalidateLayers();
+        mRenderer.getForecastStrip().invalidate();
+        assertTrue("Error: Drawing an invalidated layer should render the forecast tiles again",
+                countFrameAllocations(mMinuteStart, 1) > 0);
+        assertEquals("Error: Frames after the layer was redrawn shouldn't allocate",
+                0, countFrameAllocations(mMinuteStart, FRAME_COUNT));
+    }
+
+    /*
+        The first frame of a minute formats the time, and is allowed to allocate.  The frames
+        after it in the same minute shouldn't, including after midnight, when the date and the
+        forecast tiles change.
+     */
+    public void testOnlyTheFirstFrameOfAMinuteAllocates() {
+        mRenderer.draw(mCanvas, mBounds, mMinuteStart);
+
+        long nextMinute = mMinuteStart + DateUtils.MINUTE_IN_MILLIS;
+        assertTrue("Error: The first frame of a minute should format the time",
+                countFrameAllocations(nextMinute, 1) > 0);
+        assertEquals("Error: The other frames of a minute shouldn't allocate",
+                0, countFrameAllocations(nextMinute, FRAME_COUNT));
+
+        Calendar midnight = Calendar.getInstance();
+        midnight.setTimeInMillis(mMinuteStart);
+        midnight.set(Calendar.HOUR_OF_DAY, 0);
+        midnight.set(Calendar.MINUTE, 0);
+        midnight.set(Calendar.SECOND, 0);
+        midnight.set(Calendar.MILLISECOND, 0);
+        midnight.add(Calendar.DAY_OF_MONTH, 1);
+        long tomorrow = midnight.getTimeInMillis();
+        mRenderer.draw(mCanvas, mBounds, tomorrow - DateUtils.MINUTE_IN_MILLIS);
+        assertTrue("Error: The first frame of a day should format the date",
+                countFrameAllocations(tomorrow, 1) > 0);
+        assertEquals("Error: The other frames of the first minute of a day shouldn't allocate",
+                0, countFrameAllocations(tomorrow, FRAME_COUNT));
+    }
+
+    /*
+        Times frames drawn with a valid layer, as the watch draws them between two changes of
+        the weather or the date, and reports the average and max draw time of each mode.
+     */
+    public void testFrameTime() {
+        WatchFaceStats stats = mRenderer.getStats();
+        int[] modes = {WatchFaceLayout.MODE_INTERACTIVE, WatchFaceLayout.MODE_AMBIENT,
+                WatchFaceLayout.MODE_MUTE};
+        for (int mode : modes) {
+            setMode(mode);
+            mRenderer.draw(mCanvas, mBounds, mMinuteStart);
+
+            stats.reset();
+            for (int i = 0; i < FRAME_COUNT; i++) {
+                mRenderer.draw(mCanvas, mBounds, mMinuteStart + i * FRAME_INTERVAL_MILLIS);
+            }
+            Log.i(LOG_TAG, "Mode " + mode + ": " + stats.getFrames() + " frames, "
+                    + stats.getAverageDrawNanos() / 1000 + "us average, "
+                    + stats.getMaxDrawNanos() / 1000 + "us max");
+
+            assertEquals("Error: Every frame should be counted in mode " + mode,
+                    FRAME_COUNT, stats.getFrames());
+            assertTrue("Error: Frames took " + stats.getAverageDrawNanos() / 1000
+                    + "us on average in mode " + mode,
+                    stats.getAverageDrawNanos() < FRAME_BUDGET_NANOS);
+        }
+    }
+
+    private void setMode(int mode) {
+        mRenderer.setAmbient(mode == WatchFaceLayout.MODE_AMBIENT);
+        mRenderer.setMute(mode == WatchFaceLayout.MODE_MUTE);
+    }
+
+    /**
+     * Draws frames from the given time on, and returns how many objects the thread allocated
+     * while drawing them.
+     */
+    private int countFrameAllocations(long startMillis, int frameCount) {
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        for (int i = 0; i < frameCount; i++) {
+            mRenderer.draw(mCanvas, mBounds, startMillis + i * FRAME_INTERVAL_MILLIS);
+        }
+        int allocations = Debug.getThreadAllocCount();
+        Debug.stopAllocCounting();
+        return allocations;
+    }
+}
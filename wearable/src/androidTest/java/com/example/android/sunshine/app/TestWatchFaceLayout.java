@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.test.AndroidTestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+/*
+    The placement table replaced positions that onDraw computed on every frame.  These tests
+    check that every mode, on round and square watches, places each element where onDraw used to
+    draw it, at fixed offsets in dp for each shape.
+ */
+public class TestWatchFaceLayout extends AndroidTestCase {
+
+    // Widths of the texts the table is computed from.
+    private static final float COLON_WIDTH = 7;
+    private static final float HOUR_WIDTH = 31;
+    private static final float MINUTE_WIDTH = 29;
+    private static final float DAY_OF_WEEK_WIDTH = 23;
+    private static final float MAX_TEMP_WIDTH = 27;
+
+    // Size of the weather icon the watch face decodes, in dp.
+    private static final float ICON_SIZE_DP = 40;
+    // How far above the temperatures the icon is, and how far the temperatures are raised in
+    // ambient mode, in pixels.
+    private static final float ICON_RISE = 50;
+    private static final float AMBIENT_TEMPERATURE_RISE = 5;
+
+    private static final String TEST_ICON_HASH = "test_layout_icon";
+    private static final int TEST_ICON_SOURCE_SIZE = 256;
+
+    private static final float DELTA = 0.001f;
+
+    public void testSquareLayoutMatchesDrawnPositions() {
+        checkLayout(false, false, 45, 80, 40, 90, 20, 130, 145);
+        checkLayout(false, true, 45, 80, 40, 90, 20, 130, 145);
+    }
+
+    public void testRoundLayoutMatchesDrawnPositions() {
+        checkLayout(true, false, 55, 85, 50, 95, 25, 135, 150);
+        checkLayout(true, true, 55, 85, 50, 95, 25, 135, 150);
+    }
+
+    /*
+        The temperatures are placed after the icon, so the size the icon is decoded to has to be
+        the width of the icon actually drawn.
+     */
+    public void testIconSizeMatchesDecodedIcon() {
+        WatchFaceLayout layout = new WatchFaceLayout(mContext.getResources());
+        layout.load(mContext.getResources(), false);
+        layout.place(COLON_WIDTH, HOUR_WIDTH, MINUTE_WIDTH, DAY_OF_WEEK_WIDTH, MAX_TEMP_WIDTH,
+                false);
+        assertEquals("Error: Wrong weather icon size",
+                px(ICON_SIZE_DP), layout.getWeatherIconSize());
+
+        Bitmap icon = decodeTestIcon(layout.getWeatherIconSize());
+        try {
+            assertNotNull("Error: The test icon should be decoded", icon);
+            assertEquals("Error: The icon should be decoded to the icon size",
+                    layout.getWeatherIconSize(), icon.getWidth());
+            float iconEnd = layout.getX(WatchFaceLayout.MODE_INTERACTIVE, WatchFaceLayout.ICON)
+                    + icon.getWidth();
+            assertEquals("Error: The temperatures should start a colon and a half after the icon",
+                    iconEnd + 1.5f * COLON_WIDTH,
+                    layout.getX(WatchFaceLayout.MODE_INTERACTIVE, WatchFaceLayout.MAX_TEMP),
+                    DELTA);
+        } finally {
+            if (null != icon) {
+                icon.recycle();
+            }
+            new File(new File(mContext.getFilesDir(), "weather_icons"), TEST_ICON_HASH + ".png")
+                    .delete();
+        }
+    }
+
+    /*
+        The table depends on the widths, and has to be computed again when they change.
+     */
+    public void testPlaceAgainMovesElements() {
+        WatchFaceLayout layout = new WatchFaceLayout(mContext.getResources());
+        layout.load(mContext.getResources(), false);
+        layout.place(COLON_WIDTH, HOUR_WIDTH, MINUTE_WIDTH, DAY_OF_WEEK_WIDTH, MAX_TEMP_WIDTH,
+                false);
+        float minuteX = layout.getX(WatchFaceLayout.MODE_INTERACTIVE, WatchFaceLayout.MINUTE);
+
+        layout.place(COLON_WIDTH, HOUR_WIDTH + 10, MINUTE_WIDTH, DAY_OF_WEEK_WIDTH,
+                MAX_TEMP_WIDTH, false);
+        assertEquals("Error: A wider hour should move the minutes",
+                minuteX + 10,
+                layout.getX(WatchFaceLayout.MODE_INTERACTIVE, WatchFaceLayout.MINUTE), DELTA);
+    }
+
+    /**
+     * Checks the table against the offsets of the shape, in dp.
+     */
+    private void checkLayout(boolean isRound, boolean is24Hour, float timeXDp, float timeYDp,
+                             float dateXDp, float dateYDp, float temperatureXDp,
+                             float temperatureYDp, float forecastYDp) {
+        WatchFaceLayout layout = new WatchFaceLayout(mContext.getResources());
+        layout.load(mContext.getResources(), isRound);
+        layout.place(COLON_WIDTH, HOUR_WIDTH, MINUTE_WIDTH, DAY_OF_WEEK_WIDTH, MAX_TEMP_WIDTH,
+                is24Hour);
+
+        float timeX = px(timeXDp);
+        float timeY = px(timeYDp);
+        float dateX = px(dateXDp);
+        float dateY = px(dateYDp);
+        float temperatureX = px(temperatureXDp);
+        float temperatureY = px(temperatureYDp);
+        float forecastY = px(forecastYDp);
+
+        int[] modes = {WatchFaceLayout.MODE_INTERACTIVE, WatchFaceLayout.MODE_AMBIENT,
+                WatchFaceLayout.MODE_MUTE};
+        for (int mode : modes) {
+            String where = (isRound ? "round" : "square") + (is24Hour ? " 24-hour" : " 12-hour")
+                    + " mode " + mode + ": ";
+            boolean ambient = mode == WatchFaceLayout.MODE_AMBIENT;
+
+            // The time is drawn from left to right, in every mode.
+            checkElement(layout, mode, WatchFaceLayout.HOUR, where + "hour",
+                    true, timeX, timeY);
+            checkElement(layout, mode, WatchFaceLayout.COLON, where + "colon",
+                    true, timeX + HOUR_WIDTH, timeY);
+            checkElement(layout, mode, WatchFaceLayout.MINUTE, where + "minute",
+                    true, timeX + HOUR_WIDTH + COLON_WIDTH, timeY);
+            checkElement(layout, mode, WatchFaceLayout.AM_PM, where + "AM/PM",
+                    mode != WatchFaceLayout.MODE_INTERACTIVE && !is24Hour,
+                    timeX + HOUR_WIDTH + COLON_WIDTH + MINUTE_WIDTH + COLON_WIDTH, timeY);
+
+            // The date, icon and forecast are hidden in ambient mode.
+            checkElement(layout, mode, WatchFaceLayout.DAY_OF_WEEK, where + "day of week",
+                    !ambient, dateX, dateY);
+            checkElement(layout, mode, WatchFaceLayout.DATE, where + "date",
+                    !ambient, dateX + DAY_OF_WEEK_WIDTH, dateY);
+            checkElement(layout, mode, WatchFaceLayout.ICON, where + "icon",
+                    !ambient, temperatureX, temperatureY - ICON_RISE);
+            checkElement(layout, mode, WatchFaceLayout.FORECAST, where + "forecast",
+                    !ambient, temperatureX, forecastY);
+
+            // The temperatures follow the icon, or are raised under the time in ambient mode.
+            float maxTempX;
+            float y;
+            if (ambient) {
+                maxTempX = timeX;
+                y = temperatureY - AMBIENT_TEMPERATURE_RISE;
+            } else {
+                maxTempX = temperatureX + px(ICON_SIZE_DP) + 1.5f * COLON_WIDTH;
+                y = temperatureY;
+            }
+            checkElement(layout, mode, WatchFaceLayout.MAX_TEMP, where + "max temperature",
+                    true, maxTempX, y);
+            checkElement(layout, mode, WatchFaceLayout.MIN_TEMP, where + "min temperature",
+                    true, maxTempX + MAX_TEMP_WIDTH + COLON_WIDTH, y);
+        }
+    }
+
+    private static void checkElement(WatchFaceLayout layout, int mode, int element, String name,
+                                     boolean visible, float x, float y) {
+        assertEquals("Error: Wrong visibility for the " + name,
+                visible, layout.isVisible(mode, element));
+        if (!visible) {
+            return;
+        }
+        assertEquals("Error: Wrong x for the " + name, x, layout.getX(mode, element), DELTA);
+        assertEquals("Error: Wrong y for the " + name, y, layout.getY(mode, element), DELTA);
+    }
+
+    /**
+     * Converts dp to pixels, rounded like dimension resources.
+     */
+    private int px(float dp) {
+        return (int) (dp * mContext.getResources().getDisplayMetrics().density + 0.5f);
+    }
+
+    /**
+     * Stores an icon larger than the watch face shows, as the handheld sends it, and decodes it
+     * the way the watch face does.
+     */
+    private Bitmap decodeTestIcon(int targetSize) {
+        Bitmap source = Bitmap.createBitmap(TEST_ICON_SOURCE_SIZE, TEST_ICON_SOURCE_SIZE,
+                Bitmap.Config.ARGB_8888);
+        source.eraseColor(Color.YELLOW);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        source.compress(Bitmap.CompressFormat.PNG, 100, png);
+        source.recycle();
+
+        WeatherIconStore store = new WeatherIconStore(mContext);
+        assertTrue("Error: The test icon should be stored",
+                store.save(TEST_ICON_HASH, new ByteArrayInputStream(png.toByteArray())));
+        return store.decode(TEST_ICON_HASH, targetSize, null);
+    }
+}
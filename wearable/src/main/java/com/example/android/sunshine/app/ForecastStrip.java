@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.Base64;
+
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Strip of the upcoming days, below today's weather.  The handheld sends the days as packed
+ * arrays: their dates, and for each of them the high, low and weather id as shorts.  Each day is
+ * rendered once into a tile of the strip's bitmap, which is then drawn as is until the days,
+ * the paints or the first day to show change.  Days that have passed are skipped.
+ */
+class ForecastStrip {
+    // Bytes of each day in the packed forecast: high, low and weather id, as shorts.
+    private static final int DAY_BYTES = 6;
+
+    private final int mTileWidth;
+    private final int mTileHeight;
+    private final String mTemperatureFormat;
+    private final Canvas mCanvas = new Canvas();
+
+    private long[] mDates = new long[0];
+    private byte[] mForecast = new byte[0];
+    // Start of the first day to show.
+    private long mFirstDayMillis;
+    // Index of the first day shown.
+    private int mFirstDay;
+    private Bitmap mBitmap;
+    private boolean mDirty = true;
+
+    ForecastStrip(int tileWidth, int tileHeight, String temperatureFormat) {
+        mTileWidth = tileWidth;
+        mTileHeight = tileHeight;
+        mTemperatureFormat = temperatureFormat;
+    }
+
+    /**
+     * Sets the upcoming days.
+     *
+     * @return whether they changed
+     */
+    boolean setDays(long[] dates, byte[] forecast) {
+        if (null == dates || null == forecast || forecast.length != dates.length * DAY_BYTES) {
+            dates = new long[0];
+            forecast = new byte[0];
+        }
+        if (Arrays.equals(dates, mDates) && Arrays.equals(forecast, mForecast)) {
+            return false;
+        }
+        mDates = dates;
+        mForecast = forecast;
+        mFirstDay = findFirstDay();
+        mDirty = true;
+        return true;
+    }
+
+    /**
+     * Skips the days that start before the given time, once they have passed.
+     */
+    void setFirstDay(long firstDayMillis) {
+        mFirstDayMillis = firstDayMillis;
+        int firstDay = findFirstDay();
+        if (firstDay != mFirstDay) {
+            mFirstDay = firstDay;
+            mDirty = true;
+        }
+    }
+
+    private int findFirstDay() {
+        int day = 0;
+        while (day < mDates.length && mDates[day] < mFirstDayMillis) {
+            day++;
+        }
+        return day;
+    }
+
+    /**
+     * Encodes the days as a string, to be restored with {@link #restoreState(String)}.
+     */
+    String saveState() {
+        ByteBuffer state = ByteBuffer.allocate(mDates.length * 8 + mForecast.length);
+        for (long date : mDates) {
+            state.putLong(date);
+        }
+        state.put(mForecast);
+        return Base64.encodeToString(state.array(), Base64.NO_WRAP);
+    }
+
+    void restoreState(String state) {
+        if (null == state) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Base64.decode(state, Base64.NO_WRAP));
+        long[] dates = new long[buffer.remaining() / (8 + DAY_BYTES)];
+        for (int i = 0; i < dates.length; i++) {
+            dates[i] = buffer.getLong();
+        }
+        byte[] forecast = new byte[dates.length * DAY_BYTES];
+        buffer.get(forecast);
+        setDays(dates, forecast);
+    }
+
+    /**
+     * Returns whether there is no day to show.
+     */
+    boolean isEmpty() {
+        return mFirstDay == mDates.length;
+    }
+
+    /**
+     * Renders the tiles again on the next draw, after the paints changed.
+     */
+    void invalidate() {
+        mDirty = true;
+    }
+
+    /**
+     * Draws the strip with its top left corner at the given position, rendering the tiles first
+     * if they changed.  The paints must be center aligned.
+     */
+    void draw(Canvas canvas, float x, float y, Paint dayPaint, Paint temperaturePaint) {
+        if (isEmpty()) {
+            return;
+        }
+        if (mDirty) {
+            renderTiles(dayPaint, temperaturePaint);
+            mDirty = false;
+        }
+        canvas.drawBitmap(mBitmap, x, y, null);
+    }
+
+    private void renderTiles(Paint dayPaint, Paint temperaturePaint) {
+        int width = mTileWidth * (mDates.length - mFirstDay);
+        if (null == mBitmap || mBitmap.getWidth() != width) {
+            if (null != mBitmap) {
+                mBitmap.recycle();
+            }
+            mBitmap = Bitmap.createBitmap(width, mTileHeight, Bitmap.Config.ARGB_8888);
+            mCanvas.setBitmap(mBitmap);
+        } else {
+            mBitmap.eraseColor(Color.TRANSPARENT);
+        }
+
+        SimpleDateFormat dayFormat = new SimpleDateFormat("EEE", Locale.getDefault());
+        Date date = new Date();
+        ByteBuffer forecast = ByteBuffer.wrap(mForecast);
+        forecast.position(mFirstDay * DAY_BYTES);
+        float dayBaseline = -dayPaint.ascent();
+        float temperatureBaseline = mTileHeight - temperaturePaint.descent();
+        for (int i = mFirstDay; i < mDates.length; i++) {
+            short high = forecast.getShort();
+            short low = forecast.getShort();
+            // The weather id isn't shown yet, the tiles only have text.
+            forecast.getShort();
+
+            float center = (i - mFirstDay) * mTileWidth + mTileWidth / 2f;
+            date.setTime(mDates[i]);
+            mCanvas.drawText(dayFormat.format(date), center, dayBaseline, dayPaint);
+            String temperatures = String.format(mTemperatureFormat, String.valueOf(high)) + " "
+                    + String.format(mTemperatureFormat, String.valueOf(low));
+            mCanvas.drawText(temperatures, center, temperatureBaseline, temperaturePaint);
+        }
+    }
+
+    void release() {
+        if (null != mBitmap) {
+            mBitmap.recycle();
+            mBitmap = null;
+        }
+        mDirty = true;
+    }
+}
@@ -20,42 +20,46 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.SharedPreferences;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
-import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.Typeface;
+import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
+import android.os.PowerManager;
+import android.os.SystemClock;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
-import android.text.format.DateFormat;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.SurfaceHolder;
 import android.view.WindowInsets;
 
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.wearable.Asset;
 import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
 import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemBuffer;
 import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
+import java.io.FileDescriptor;
 import java.io.InputStream;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.Locale;
-import java.util.TimeZone;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -66,12 +70,6 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
     // Log tag.
     private static final String LOG_TAG = "SunshineWear";
 
-    // Typefaces used.
-    private static final Typeface TYPEFACE_ROBOTO =
-            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
-    private static final Typeface TYPEFACE_ROBOTO_CONDENSED =
-            Typeface.create("sans-serif-condensed", Typeface.NORMAL);
-
     /**
      * Update rate in milliseconds for normal (not ambient and not mute) mode. We update twice
      * a second to blink the colons.
@@ -79,13 +77,28 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
     private static final long NORMAL_UPDATE_RATE_MS = 500;
 
     /**
-     * Update rate in milliseconds for mute mode. We update every minute, like in ambient mode.
+     * Update rate in milliseconds for low-power mode, in which the colons don't blink: when muted,
+     * in battery saver mode, or when blinking is turned off.  We update every minute, like in
+     * ambient mode, on the minute boundary.
      */
-    private static final long MUTE_UPDATE_RATE_MS = TimeUnit.MINUTES.toMillis(1);
+    private static final long LOW_POWER_UPDATE_RATE_MS = TimeUnit.MINUTES.toMillis(1);
+
+    // The engine last created, whose stats are dumped.
+    private Engine mEngine;
 
     @Override
     public Engine onCreateEngine() {
-        return new Engine();
+        mEngine = new Engine();
+        return mEngine;
+    }
+
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(fd, writer, args);
+        Engine engine = mEngine;
+        if (null != engine) {
+            engine.dump(writer);
+        }
     }
 
     private class Engine extends CanvasWatchFaceService.Engine implements DataApi.DataListener,
@@ -96,77 +109,62 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         private static final String MAX_TEMP_KEY = "com.example.android.sunshine.app.max_temp.key";
         private static final String MIN_TEMP_KEY = "com.example.android.sunshine.app.min_temp.key";
         private static final String WEATHER_IMAGE_KEY = "com.example.android.sunshine.app.weather_image.key";
-
-        static final String COLON_STRING = ":";
-
-        // Alpha value for drawing time when in mute mode.
-        static final int MUTE_ALPHA = 100;
-
-        // Alpha value for drawing time when not in mute mode.
-        static final int NORMAL_ALPHA = 255;
+        private static final String WEATHER_ID_KEY = "com.example.android.sunshine.app.weather_id.key";
+        private static final String ICON_HASH_KEY = "com.example.android.sunshine.app.icon_hash.key";
+        private static final String FORECAST_DATES_KEY = "com.example.android.sunshine.app.forecast_dates.key";
+        private static final String FORECAST_KEY = "com.example.android.sunshine.app.forecast.key";
+        // Path of the data items holding the icons, followed by their hash.
+        private static final String PATH_ICON_PREFIX = "/sunshine_watch_face/Icon/";
+
+        // The last weather received, restored when the watch face is created.
+        private static final String STATE_PREFS_NAME = "watch_face_state";
+        private static final String STATE_MAX_TEMP_KEY = "max_temp";
+        private static final String STATE_MIN_TEMP_KEY = "min_temp";
+        private static final String STATE_WEATHER_ID_KEY = "weather_id";
+        private static final String STATE_ICON_HASH_KEY = "icon_hash";
+        private static final String STATE_FORECAST_KEY = "forecast";
 
         static final int MSG_UPDATE_TIME = 0;
 
         // How often {@link #mUpdateTimeHandler} ticks in milliseconds.
         long mInteractiveUpdateRateMs = NORMAL_UPDATE_RATE_MS;
 
+        // Whether the colons blink in interactive mode, when not muted or saving battery.
+        boolean mBlinkColonsEnabled;
+        boolean mPowerSaveMode;
+        PowerManager mPowerManager;
+
         /**
          * Un-registering an unregistered receiver throws an exception. Keep track of the
          * registration state to prevent that.
          */
         boolean mRegisteredReceiver = false;
 
-        // Paint objects.
-        Paint mBackgroundPaint;
-        Paint mDatePaint;
-        Paint mHourPaint;
-        Paint mMinutePaint;
-        Paint mAmPmPaint;
-        Paint mColonPaint;
-        Paint mMaxTempPaint;
-        Paint mMinTempPaint;
-        Paint mWeatherBitmapPaint;
-
-        // Color constants for various paint objects.
-        int mColorTextInteractive;
-        int mColorTextAmbient;
-        int mColorTextColon;
-        int mColorTextAmPm;
-        int mColorTextDate;
-        int mColorTextMinTemperature;
-        int mColorBackgroundInteractive;
-        int mColorBackgroundAmbient;
-
-        // X and Y offsets.
-        float mXOffsetTime;
-        float mYOffsetTime;
-        float mXOffsetDate;
-        float mYOffsetDate;
-        float mXOffsetTemperature;
-        float mYOffsetTemperature;
+        // Draws the frames, with the background, date and weather cached in layers.
+        WatchFaceRenderer mRenderer;
 
         // Weather icon bitmap, max and min temperatures received from the handheld.
+        boolean mHasWeather;
         int mMaxTemp;
         int mMinTemp;
+        int mWeatherId;
         Bitmap mWeatherBitmap;
-
-        // AM/PM strings.
-        String mAmString;
-        String mPmString;
-
-        /**
-         * Whether the display supports fewer bits for each color in ambient mode. When true, we
-         * disable anti-aliasing in ambient mode.
-         */
-        boolean mLowBitAmbient;
+        // Hash of the icon in mWeatherBitmap, or being loaded.
+        String mWeatherIconHash;
+        // Hash of the icon of the last weather received, which may have failed to load.
+        String mCurrentIconHash;
+        WeatherIconStore mIconStore;
+        SharedPreferences mStatePrefs;
+        // The previous icon, whose memory the next one reuses.
+        Bitmap mSpareWeatherBitmap;
+        // Icons are loaded one at a time, without waiting behind other tasks of the process.
+        final ExecutorService mIconExecutor = Executors.newSingleThreadExecutor();
+        // The icon load started last, cancelled when the engine is destroyed.
+        LoadBitmapAsyncTask mLoadTask;
+        // Whether the engine was destroyed, after which loaded icons are recycled.
+        boolean mDestroyed;
 
         boolean mMute;
-        boolean mShouldDrawColons;
-        float mColonWidth;
-        Calendar mCalendar;
-        Date mDate;
-        SimpleDateFormat mDayOfWeekFormat;
-        java.text.DateFormat mDateFormat;
 
         // Google api client for using wearable data layer.
         GoogleApiClient mGoogleApiClient = new GoogleApiClient.Builder(SunshineWatchFaceService.this)
@@ -176,13 +174,19 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
                 .build();
 
         /**
-         * Handles time zone and locale changes.
+         * Handles time zone, locale and battery saver changes.
          */
         final BroadcastReceiver mReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mCalendar.setTimeZone(TimeZone.getDefault());
-                initFormats();
+                if (PowerManager.ACTION_POWER_SAVE_MODE_CHANGED.equals(intent.getAction())) {
+                    updateUpdateRate();
+                    return;
+                }
+                mRenderer.updateFormats();
+                // The day names of the forecast strip depend on the locale
+                mRenderer.getForecastStrip().invalidate();
+                mRenderer.invalidateLayers();
                 invalidate();
             }
         };
@@ -193,6 +197,7 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             public void handleMessage(Message message) {
                 switch (message.what) {
                     case MSG_UPDATE_TIME:
+                        mRenderer.getStats().onWakeUp();
                         if (Log.isLoggable(LOG_TAG, Log.VERBOSE)) {
                             Log.v(LOG_TAG, "updating time");
                         }
@@ -222,55 +227,95 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
                     .setShowSystemUiTime(false)
                     .build());
 
-            // Get strings from resources.
             Resources resources = SunshineWatchFaceService.this.getResources();
-            mAmString = resources.getString(R.string.digital_am);
-            mPmString = resources.getString(R.string.digital_pm);
-
-            // Get colors from resources.
-            mColorTextInteractive = resources.getColor(R.color.color_text_interactive);
-            mColorTextAmbient = resources.getColor(R.color.color_text_ambient);
-            mColorTextColon = resources.getColor(R.color.color_text_colon);
-            mColorTextAmPm = resources.getColor(R.color.color_text_am_pm);
-            mColorTextDate = resources.getColor(R.color.color_text_date);
-            mColorTextMinTemperature = resources.getColor(R.color.color_text_min_temperature);
-            mColorBackgroundInteractive = resources.getColor(R.color.color_background_interactive);
-            mColorBackgroundAmbient = resources.getColor(R.color.color_background_ambient);
-
-            // Create paint objects and assign colors.
-            mBackgroundPaint = new Paint();
-            mBackgroundPaint.setColor(mColorBackgroundInteractive);
-            mHourPaint = createTextPaint(mColorTextInteractive);
-            mMinutePaint = createTextPaint(mColorTextInteractive, TYPEFACE_ROBOTO_CONDENSED);
-            mAmPmPaint = createTextPaint(mColorTextAmPm);
-            mColonPaint = createTextPaint(mColorTextColon);
-            mDatePaint = createTextPaint(mColorTextDate);
-            mMaxTempPaint = createTextPaint(mColorTextInteractive);
-            mMinTempPaint = createTextPaint(mColorTextMinTemperature, TYPEFACE_ROBOTO_CONDENSED);
-            mWeatherBitmapPaint = new Paint();
+            mBlinkColonsEnabled = resources.getBoolean(R.bool.blink_colons);
+            mPowerManager = (PowerManager) getSystemService(POWER_SERVICE);
 
+            mRenderer = new WatchFaceRenderer(SunshineWatchFaceService.this);
             mWeatherBitmap = null;
-            mCalendar = Calendar.getInstance();
-            mDate = new Date();
-            initFormats();
+            mIconStore = new WeatherIconStore(SunshineWatchFaceService.this);
+            mStatePrefs = getSharedPreferences(STATE_PREFS_NAME, MODE_PRIVATE);
+            restoreWeather();
         }
 
-        @Override
-        public void onDestroy() {
-            mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
-            super.onDestroy();
+        /**
+         * Restores the last weather received, so that it shows without waiting for the handheld.
+         */
+        private void restoreWeather() {
+            if (!mStatePrefs.contains(STATE_MAX_TEMP_KEY)) {
+                return;
+            }
+            mHasWeather = true;
+            mMaxTemp = mStatePrefs.getInt(STATE_MAX_TEMP_KEY, 0);
+            mMinTemp = mStatePrefs.getInt(STATE_MIN_TEMP_KEY, 0);
+            mWeatherId = mStatePrefs.getInt(STATE_WEATHER_ID_KEY, 0);
+            mRenderer.getForecastStrip().restoreState(
+                    mStatePrefs.getString(STATE_FORECAST_KEY, null));
+            mRenderer.setTemperatures(mMaxTemp, mMinTemp);
+            mCurrentIconHash = mStatePrefs.getString(STATE_ICON_HASH_KEY, null);
+            if (null != mCurrentIconHash) {
+                loadIcon(mCurrentIconHash);
+            }
         }
 
-        private Paint createTextPaint(int defaultInteractiveColor) {
-            return createTextPaint(defaultInteractiveColor, TYPEFACE_ROBOTO);
+        private void saveWeather(String iconHash) {
+            mStatePrefs.edit()
+                    .putInt(STATE_MAX_TEMP_KEY, mMaxTemp)
+                    .putInt(STATE_MIN_TEMP_KEY, mMinTemp)
+                    .putInt(STATE_WEATHER_ID_KEY, mWeatherId)
+                    .putString(STATE_ICON_HASH_KEY, iconHash)
+                    .putString(STATE_FORECAST_KEY, mRenderer.getForecastStrip().saveState())
+                    .apply();
         }
 
-        private Paint createTextPaint(int defaultInteractiveColor, Typeface typeface) {
-            Paint paint = new Paint();
-            paint.setColor(defaultInteractiveColor);
-            paint.setTypeface(typeface);
-            paint.setAntiAlias(true);
-            return paint;
+        /**
+         * Starts loading the icon with the given hash, reusing the spare bitmap.
+         */
+        private void loadIcon(String iconHash) {
+            // Weather read back after onDestroy can't be loaded on the shut down executor
+            if (mDestroyed) {
+                return;
+            }
+            mWeatherIconHash = iconHash;
+            Bitmap reuse = mSpareWeatherBitmap;
+            mSpareWeatherBitmap = null;
+            mLoadTask = new LoadBitmapAsyncTask(reuse);
+            mLoadTask.executeOnExecutor(mIconExecutor, iconHash);
+        }
+
+        /**
+         * Keeps a bitmap that is no longer drawn, for the next icon to reuse.
+         */
+        private void keepSpareBitmap(Bitmap bitmap) {
+            if (null == bitmap || bitmap == mSpareWeatherBitmap) {
+                return;
+            }
+            if (null != mSpareWeatherBitmap) {
+                mSpareWeatherBitmap.recycle();
+            }
+            mSpareWeatherBitmap = bitmap;
+        }
+
+        @Override
+        public void onDestroy() {
+            mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mDestroyed = true;
+            if (null != mLoadTask) {
+                mLoadTask.cancel(true);
+                mLoadTask = null;
+            }
+            mIconExecutor.shutdownNow();
+            mRenderer.setWeatherBitmap(null);
+            mRenderer.release();
+            if (null != mWeatherBitmap) {
+                mWeatherBitmap.recycle();
+                mWeatherBitmap = null;
+            }
+            if (null != mSpareWeatherBitmap) {
+                mSpareWeatherBitmap.recycle();
+                mSpareWeatherBitmap = null;
+            }
+            super.onDestroy();
         }
 
         @Override
@@ -281,15 +326,22 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             super.onVisibilityChanged(visible);
 
             if (visible) {
+                mRenderer.onVisible();
                 mGoogleApiClient.connect();
 
                 registerReceiver();
+                mRenderer.getStats().reset();
+                updateUpdateRate();
 
                 // Update time zone and date formats, in case they changed while we weren't visible.
-                mCalendar.setTimeZone(TimeZone.getDefault());
-                initFormats();
+                mRenderer.updateFormats();
             } else {
                 unregisterReceiver();
+                if (Log.isLoggable(LOG_TAG, Log.DEBUG)) {
+                    StringWriter stats = new StringWriter();
+                    dump(new PrintWriter(stats));
+                    Log.d(LOG_TAG, stats.toString());
+                }
 
                 if (mGoogleApiClient != null && mGoogleApiClient.isConnected()) {
                     Wearable.DataApi.removeListener(mGoogleApiClient, this);
@@ -302,13 +354,6 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             updateTimer();
         }
 
-        private void initFormats() {
-            mDayOfWeekFormat = new SimpleDateFormat("EEEE", Locale.getDefault());
-            mDayOfWeekFormat.setCalendar(mCalendar);
-            mDateFormat = DateFormat.getDateFormat(SunshineWatchFaceService.this);
-            mDateFormat.setCalendar(mCalendar);
-        }
-
         private void registerReceiver() {
             if (mRegisteredReceiver) {
                 return;
@@ -316,6 +361,7 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             mRegisteredReceiver = true;
             IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
             filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+            filter.addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
             SunshineWatchFaceService.this.registerReceiver(mReceiver, filter);
         }
 
@@ -335,40 +381,7 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
                 Log.d(LOG_TAG, "onApplyWindowInsets: " + (insets.isRound() ? "round" : "square"));
             }
 
-            // Load resources that have alternate values for round watches.
-            Resources resources = SunshineWatchFaceService.this.getResources();
-            boolean isRound = insets.isRound();
-            mXOffsetTime = resources.getDimensionPixelSize(isRound
-                    ? R.dimen.x_offset_time_round : R.dimen.x_offset_time);
-            mYOffsetTime = resources.getDimensionPixelSize(isRound
-                    ? R.dimen.y_offset_time_round : R.dimen.y_offset_time);
-            mXOffsetDate = resources.getDimensionPixelSize(isRound
-                    ? R.dimen.x_offset_date_round : R.dimen.x_offset_date);
-            mYOffsetDate = resources.getDimensionPixelSize(isRound
-                    ? R.dimen.y_offset_date_round : R.dimen.y_offset_date);
-            mXOffsetTemperature = resources.getDimensionPixelSize(isRound
-                    ? R.dimen.x_offset_temperature_round : R.dimen.x_offset_temperature);
-            mYOffsetTemperature = resources.getDimensionPixelSize(isRound
-                    ? R.dimen.y_offset_temperature_round : R.dimen.y_offset_temperature);
-            float timeTextSize = resources.getDimensionPixelSize(isRound
-                    ? R.dimen.text_size_time_round : R.dimen.text_size_time);
-            float dateTextSize = resources.getDimensionPixelSize(R.dimen.text_size_date);
-            float amPmTextSize = resources.getDimensionPixelSize(isRound
-                    ? R.dimen.text_size_am_pm_round : R.dimen.text_size_am_pm);
-            float temperatureTextSize = resources.getDimensionPixelSize(isRound
-                    ? R.dimen.text_size_temperature_round : R.dimen.text_size_temperature);
-
-            // Set the text sizes to the paint objects.
-            mHourPaint.setTextSize(timeTextSize);
-            mMinutePaint.setTextSize(timeTextSize);
-            mColonPaint.setTextSize(timeTextSize);
-            mAmPmPaint.setTextSize(amPmTextSize);
-            mDatePaint.setTextSize(dateTextSize);
-            mMaxTempPaint.setTextSize(temperatureTextSize);
-            mMinTempPaint.setTextSize(temperatureTextSize);
-
-            // Get the colon width.
-            mColonWidth = mColonPaint.measureText(COLON_STRING);
+            mRenderer.setShape(insets.isRound());
         }
 
         @Override
@@ -376,11 +389,12 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             super.onPropertiesChanged(properties);
 
             boolean burnInProtection = properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false);
-            mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+            boolean lowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+            mRenderer.setLowBitAmbient(lowBitAmbient);
 
             if (Log.isLoggable(LOG_TAG, Log.DEBUG)) {
                 Log.d(LOG_TAG, "onPropertiesChanged: burn-in protection = " + burnInProtection
-                        + ", low-bit ambient = " + mLowBitAmbient);
+                        + ", low-bit ambient = " + lowBitAmbient);
             }
         }
 
@@ -400,27 +414,7 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
                 Log.d(LOG_TAG, "onAmbientModeChanged: " + inAmbientMode);
             }
 
-            // Adjust paint colors based on interactive or ambient mode.
-            adjustPaintColorToCurrentMode(mBackgroundPaint,mColorBackgroundInteractive, mColorBackgroundAmbient);
-            adjustPaintColorToCurrentMode(mHourPaint, mColorTextInteractive, mColorTextAmbient);
-            adjustPaintColorToCurrentMode(mMinutePaint, mColorTextInteractive, mColorTextAmbient);
-            adjustPaintColorToCurrentMode(mColonPaint, mColorTextColon, mColorTextAmbient);
-            adjustPaintColorToCurrentMode(mAmPmPaint, mColorTextAmPm, mColorTextAmbient);
-            adjustPaintColorToCurrentMode(mDatePaint, mColorTextDate, mColorTextAmbient);
-            adjustPaintColorToCurrentMode(mMaxTempPaint, mColorTextInteractive, mColorTextAmbient);
-            adjustPaintColorToCurrentMode(mMinTempPaint, mColorTextMinTemperature, mColorTextAmbient);
-
-            // Adjust anti alias.
-            if (mLowBitAmbient) {
-                boolean antiAlias = !inAmbientMode;
-                mHourPaint.setAntiAlias(antiAlias);
-                mMinutePaint.setAntiAlias(antiAlias);
-                mColonPaint.setAntiAlias(antiAlias);
-                mAmPmPaint.setAntiAlias(antiAlias);
-                mDatePaint.setAntiAlias(antiAlias);
-                mMaxTempPaint.setAntiAlias(antiAlias);
-                mMinTempPaint.setAntiAlias(antiAlias);
-            }
+            mRenderer.setAmbient(inAmbientMode);
             invalidate();
 
             // Whether the timer should be running depends on whether we're in ambient mode (as well
@@ -428,11 +422,6 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             updateTimer();
         }
 
-        private void adjustPaintColorToCurrentMode(Paint paint, int interactiveColor,
-                                                   int ambientColor) {
-            paint.setColor(isInAmbientMode() ? ambientColor : interactiveColor);
-        }
-
         @Override
         public void onInterruptionFilterChanged(int interruptionFilter) {
             if (Log.isLoggable(LOG_TAG, Log.DEBUG)) {
@@ -441,23 +430,38 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             super.onInterruptionFilterChanged(interruptionFilter);
 
             boolean inMuteMode = interruptionFilter == WatchFaceService.INTERRUPTION_FILTER_NONE;
-            // We only need to update once a minute in mute mode.
-            setInteractiveUpdateRateMs(inMuteMode ? MUTE_UPDATE_RATE_MS : NORMAL_UPDATE_RATE_MS);
-
             if (mMute != inMuteMode) {
                 mMute = inMuteMode;
-                int alpha = inMuteMode ? MUTE_ALPHA : NORMAL_ALPHA;
-                mHourPaint.setAlpha(alpha);
-                mMinutePaint.setAlpha(alpha);
-                mAmPmPaint.setAlpha(alpha);
-                mColonPaint.setAlpha(alpha);
-                mDatePaint.setAlpha(alpha);
-                mMaxTempPaint.setAlpha(alpha);
-                mMinTempPaint.setAlpha(alpha);
+                // We only need to update once a minute in mute mode.
+                updateUpdateRate();
+                mRenderer.setMute(inMuteMode);
                 invalidate();
             }
         }
 
+        /**
+         * Returns whether the colons blink in interactive mode.  They don't in low-power mode, so
+         * the watch face only wakes up once a minute.
+         */
+        private boolean shouldBlinkColons() {
+            return mBlinkColonsEnabled && !mMute && !mPowerSaveMode;
+        }
+
+        private void updateUpdateRate() {
+            mPowerSaveMode = mPowerManager.isPowerSaveMode();
+            mRenderer.setBlinkColons(shouldBlinkColons());
+            setInteractiveUpdateRateMs(shouldBlinkColons()
+                    ? NORMAL_UPDATE_RATE_MS : LOW_POWER_UPDATE_RATE_MS);
+            invalidate();
+        }
+
+        void dump(PrintWriter writer) {
+            writer.println("Update rate: " + mInteractiveUpdateRateMs + "ms, blink colons: "
+                    + shouldBlinkColons() + " (enabled: " + mBlinkColonsEnabled + ", mute: "
+                    + mMute + ", power save: " + mPowerSaveMode + ")");
+            mRenderer.getStats().dump(writer, "");
+        }
+
         public void setInteractiveUpdateRateMs(long updateRateMs) {
             if (updateRateMs == mInteractiveUpdateRateMs) {
                 return;
@@ -470,111 +474,17 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             }
         }
 
-        private void updatePaintIfInteractive(Paint paint, int interactiveColor) {
-            if (!isInAmbientMode() && paint != null) {
-                paint.setColor(interactiveColor);
+        @Override
+        public void onPeekCardPositionUpdate(Rect rect) {
+            super.onPeekCardPositionUpdate(rect);
+            if (mRenderer.setPeekCardVisible(!rect.isEmpty())) {
+                invalidate();
             }
         }
 
-        private String formatTwoDigitNumber(int hour) {
-            return String.format("%02d", hour);
-        }
-
-        private String getAmPmString(int amPm) {
-            return amPm == Calendar.AM ? mAmString : mPmString;
-        }
-
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            long now = System.currentTimeMillis();
-            mCalendar.setTimeInMillis(now);
-            mDate.setTime(now);
-            boolean is24Hour = DateFormat.is24HourFormat(SunshineWatchFaceService.this);
-
-            // Show colons for the first half of each second so the colons blink on when the time
-            // updates.
-            mShouldDrawColons = (System.currentTimeMillis() % 1000) < 500;
-
-            // Draw the background.
-            canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
-
-            // Draw the hours.
-            float x = mXOffsetTime;
-            String hourString;
-            if (is24Hour) {
-                hourString = formatTwoDigitNumber(mCalendar.get(Calendar.HOUR_OF_DAY));
-            } else {
-                int hour = mCalendar.get(Calendar.HOUR);
-                if (hour == 0) {
-                    hour = 12;
-                }
-                hourString = String.valueOf(hour);
-            }
-            canvas.drawText(hourString, x, mYOffsetTime, mHourPaint);
-            x += mHourPaint.measureText(hourString);
-
-            // In ambient and mute modes, always draw the first colon. Otherwise, draw the
-            // first colon for the first half of each second.
-            if (isInAmbientMode() || mMute || mShouldDrawColons) {
-                canvas.drawText(COLON_STRING, x, mYOffsetTime, mColonPaint);
-            }
-            x += mColonWidth;
-
-            // Draw the minutes.
-            String minuteString = formatTwoDigitNumber(mCalendar.get(Calendar.MINUTE));
-            canvas.drawText(minuteString, x, mYOffsetTime, mMinutePaint);
-            x += mMinutePaint.measureText(minuteString);
-
-            // If in interactive, un-muted and 12-hour mode, draw AM/PM.
-            if ((isInAmbientMode() || mMute) && !is24Hour) {
-                x += mColonWidth;
-                canvas.drawText(getAmPmString(mCalendar.get(Calendar.AM_PM)), x, mYOffsetTime, mAmPmPaint);
-            }
-
-            // Only render the day of week, date, weather icon, max and min temperatures if there
-            // is no peek card, so they do not bleed into each other.
-            if (getPeekCardPosition().isEmpty()) {
-                // Draw only the max and min temp in ambient mode.
-                if (isInAmbientMode()) {
-                    // Check if weather data was received from handheld.
-                    if(mWeatherBitmap != null) {
-                        // Max temp
-                        x = mXOffsetTime;
-                        String maxTemp = String.format(getString(R.string.format_temperature), String.valueOf(mMaxTemp));
-                        canvas.drawText(maxTemp, x, mYOffsetTemperature - 5, mMaxTempPaint);
-
-                        // Min temp
-                        x += mMaxTempPaint.measureText(maxTemp) + mColonWidth;
-                        String minTemp = String.format(getString(R.string.format_temperature), String.valueOf(mMinTemp));
-                        canvas.drawText(minTemp, x, mYOffsetTemperature - 5, mMinTempPaint);
-                    }
-                } else {
-                    // Day of week.
-                    x = mXOffsetDate;
-                    canvas.drawText(mDayOfWeekFormat.format(mDate), x, mYOffsetDate, mDatePaint);
-
-                    // Date
-                    x += mDatePaint.measureText(mDayOfWeekFormat.format(mDate));
-                    canvas.drawText(", " + mDateFormat.format(mDate), x, mYOffsetDate, mDatePaint);
-
-                    // Show weather data only if weather update has been received from handheld.
-                    if(mWeatherBitmap != null) {
-                        // Weather icon.
-                        x = mXOffsetTemperature;
-                        canvas.drawBitmap(mWeatherBitmap, x, mYOffsetTemperature - 50, mWeatherBitmapPaint);
-
-                        // Max temp.
-                        x += mWeatherBitmap.getWidth() + 1.5 * mColonWidth;
-                        String maxTemp = String.format(getString(R.string.format_temperature), String.valueOf(mMaxTemp));
-                        canvas.drawText(maxTemp, x, mYOffsetTemperature, mMaxTempPaint);
-
-                        // Min temp.
-                        x += mMaxTempPaint.measureText(maxTemp) + mColonWidth;
-                        String minTemp = String.format(getString(R.string.format_temperature), String.valueOf(mMinTemp));
-                        canvas.drawText(minTemp, x, mYOffsetTemperature, mMinTempPaint);
-                    }
-                }
-            }
+            mRenderer.draw(canvas, bounds, System.currentTimeMillis());
         }
 
         /**
@@ -609,51 +519,192 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
                 }
 
                 DataItem dataItem = dataEvent.getDataItem();
-                if (!dataItem.getUri().getPath().equals(PATH_WITH_WEATHER)) {
-                    continue;
+                String path = dataItem.getUri().getPath();
+                if (path.equals(PATH_WITH_WEATHER)) {
+                    applyWeather(dataItem);
+                } else if (path.startsWith(PATH_ICON_PREFIX)) {
+                    onIconChanged(path.substring(PATH_ICON_PREFIX.length()));
                 }
+            }
+        }
 
-                // Get the weather data map.
-                DataMapItem dataMapItem = DataMapItem.fromDataItem(dataItem);
-                DataMap weather = dataMapItem.getDataMap();
+        /**
+         * Loads the icon of the current weather once its data item arrives, if it failed to load
+         * because the weather arrived first.
+         */
+        private void onIconChanged(String iconHash) {
+            if (iconHash.equals(mCurrentIconHash) && !iconHash.equals(mWeatherIconHash)) {
+                loadIcon(iconHash);
+            }
+        }
 
-                // Extract temperatures.
-                mMaxTemp = weather.getInt(MAX_TEMP_KEY);
-                mMinTemp = weather.getInt(MIN_TEMP_KEY);
+        /**
+         * Shows the weather of a data item received from the handheld.
+         */
+        private void applyWeather(DataItem dataItem) {
+            // Get the weather data map.
+            DataMapItem dataMapItem = DataMapItem.fromDataItem(dataItem);
+            DataMap weather = dataMapItem.getDataMap();
+
+            // Extract temperatures and weather condition.
+            int maxTemp = weather.getInt(MAX_TEMP_KEY);
+            int minTemp = weather.getInt(MIN_TEMP_KEY);
+            int weatherId = weather.getInt(WEATHER_ID_KEY);
+            String iconHash = weather.getString(ICON_HASH_KEY);
+            boolean forecastChanged = mRenderer.getForecastStrip().setDays(
+                    weather.getLongArray(FORECAST_DATES_KEY), weather.getByteArray(FORECAST_KEY));
+
+            // The same weather is read again every time the watch face connects, and shouldn't be
+            // saved or drawn again.
+            if (forecastChanged || !mHasWeather || maxTemp != mMaxTemp || minTemp != mMinTemp
+                    || weatherId != mWeatherId || !TextUtils.equals(iconHash, mCurrentIconHash)) {
+                mMaxTemp = maxTemp;
+                mMinTemp = minTemp;
+                mWeatherId = weatherId;
+                mCurrentIconHash = iconHash;
+                mHasWeather = true;
+                mRenderer.setTemperatures(maxTemp, minTemp);
+                saveWeather(iconHash);
+                invalidate();
+            }
 
-                // Extract bitmap from asset on background thread.
-                new LoadBitmapAsyncTask().execute(weather.getAsset(WEATHER_IMAGE_KEY));
+            // Load the icon on a background thread, unless it is already shown or loading.  An
+            // icon that failed to load is tried again.
+            if (null != iconHash && !iconHash.equals(mWeatherIconHash)) {
+                loadIcon(iconHash);
             }
         }
 
+        /**
+         * Applies the weather the handheld published before the watch face was connected, so it
+         * doesn't wait for the next sync.
+         */
+        private void pullWeather() {
+            final long startMillis = SystemClock.elapsedRealtime();
+            Uri weatherUri = new Uri.Builder()
+                    .scheme(PutDataRequest.WEAR_URI_SCHEME)
+                    .path(PATH_WITH_WEATHER)
+                    .build();
+            Wearable.DataApi.getDataItems(mGoogleApiClient, weatherUri).setResultCallback(
+                    new ResultCallback<DataItemBuffer>() {
+                        @Override
+                        public void onResult(DataItemBuffer dataItems) {
+                            try {
+                                if (!dataItems.getStatus().isSuccess()) {
+                                    Log.e(LOG_TAG, "Can't read weather: " + dataItems.getStatus());
+                                    return;
+                                }
+                                Log.d(LOG_TAG, "Read " + dataItems.getCount() + " weather items in "
+                                        + (SystemClock.elapsedRealtime() - startMillis) + "ms");
+                                for (DataItem dataItem : dataItems) {
+                                    applyWeather(dataItem);
+                                }
+                            } finally {
+                                dataItems.release();
+                            }
+                        }
+                    });
+        }
+
         /*
-         * Extracts {@link android.graphics.Bitmap} data from the
-         * {@link com.google.android.gms.wearable.Asset}
+         * Loads an icon from the {@link WeatherIconStore}, after fetching it from the data layer
+         * if it isn't stored yet.
          */
-        private class LoadBitmapAsyncTask extends AsyncTask<Asset, Void, Bitmap> {
+        private class LoadBitmapAsyncTask extends AsyncTask<String, Void, Bitmap> {
+            private final Bitmap mReuse;
+            private String mIconHash;
+
+            LoadBitmapAsyncTask(Bitmap reuse) {
+                mReuse = reuse;
+            }
+
             @Override
-            protected Bitmap doInBackground(Asset... params) {
-                if(params.length > 0) {
-                    Asset asset = params[0];
+            protected Bitmap doInBackground(String... params) {
+                mIconHash = params[0];
+                if (!mIconStore.contains(mIconHash) && !fetchIcon(mIconHash)) {
+                    return null;
+                }
+                return mIconStore.decode(mIconHash, mRenderer.getLayout().getWeatherIconSize(),
+                        mReuse);
+            }
+
+            private boolean fetchIcon(String iconHash) {
+                // Restored icons are loaded before the client connects, and should be stored.
+                if (!mGoogleApiClient.isConnected()) {
+                    Log.e(LOG_TAG, "Can't fetch icon " + iconHash + ", not connected");
+                    return false;
+                }
+                // The handheld sends each icon once, in its own data item.
+                Uri iconUri = new Uri.Builder()
+                        .scheme(PutDataRequest.WEAR_URI_SCHEME)
+                        .path(PATH_ICON_PREFIX + iconHash)
+                        .build();
+                DataItemBuffer dataItems =
+                        Wearable.DataApi.getDataItems(mGoogleApiClient, iconUri).await();
+                try {
+                    if (!dataItems.getStatus().isSuccess() || dataItems.getCount() == 0) {
+                        Log.e(LOG_TAG, "Requested an unknown icon: " + iconHash);
+                        return false;
+                    }
+                    Asset asset = DataMapItem.fromDataItem(dataItems.get(0)).getDataMap()
+                            .getAsset(WEATHER_IMAGE_KEY);
+                    if (null == asset) {
+                        Log.e(LOG_TAG, "Icon data item without asset: " + iconHash);
+                        return false;
+                    }
                     InputStream assetInputStream = Wearable.DataApi.getFdForAsset(
                             mGoogleApiClient, asset).await().getInputStream();
-
                     if (assetInputStream == null) {
                         Log.e(LOG_TAG, "Requested an unknown Asset.");
-                        return null;
+                        return false;
                     }
-                    return BitmapFactory.decodeStream(assetInputStream);
-                } else {
-                    Log.e(LOG_TAG, "Asset must be non-null");
-                    return null;
+                    return mIconStore.save(iconHash, assetInputStream);
+                } finally {
+                    dataItems.release();
                 }
             }
 
             @Override
             protected void onPostExecute(Bitmap bitmap) {
-                if(bitmap != null) {
+                // The engine's bitmaps were recycled, and the icon won't be drawn
+                if (mDestroyed) {
+                    recycle(bitmap);
+                    return;
+                }
+                if (bitmap != mReuse) {
+                    keepSpareBitmap(mReuse);
+                }
+                // Ignore icons that were replaced while loading
+                if (!mIconHash.equals(mWeatherIconHash)) {
+                    keepSpareBitmap(bitmap);
+                    return;
+                }
+                if (bitmap != null) {
                     Log.d(LOG_TAG, "Received bitmap");
+                    keepSpareBitmap(mWeatherBitmap);
                     mWeatherBitmap = bitmap;
+                    mRenderer.setWeatherBitmap(bitmap);
+                    invalidate();
+                } else {
+                    // Try again with the next update
+                    mWeatherIconHash = null;
+                }
+            }
+
+            @Override
+            protected void onCancelled(Bitmap bitmap) {
+                recycle(bitmap);
+            }
+
+            /**
+             * Recycles the loaded icon and the bitmap it was to reuse, which nothing draws.
+             */
+            private void recycle(Bitmap bitmap) {
+                if (null != mReuse) {
+                    mReuse.recycle();
+                }
+                if (null != bitmap && bitmap != mReuse) {
+                    bitmap.recycle();
                 }
             }
         }
@@ -663,6 +714,7 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             Log.d(LOG_TAG, "onConnected: " + connectionHint);
 
             Wearable.DataApi.addListener(mGoogleApiClient, this);
+            pullWeather();
         }
 
         @Override  // GoogleApiClient.ConnectionCallbacks
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+/**
+ * Off-screen bitmap holding the parts of the watch face that change rarely.  It is drawn once,
+ * composited on every frame, and drawn again only after it has been invalidated.
+ */
+class WatchFaceLayer {
+    private final Canvas mCanvas = new Canvas();
+    private Bitmap mBitmap;
+    private boolean mValid;
+
+    /**
+     * Sizes the layer to the surface.  The layer is invalidated if the size changed.
+     */
+    void setSize(int width, int height) {
+        if (null != mBitmap && mBitmap.getWidth() == width && mBitmap.getHeight() == height) {
+            return;
+        }
+        if (null != mBitmap) {
+            mBitmap.recycle();
+        }
+        mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        mCanvas.setBitmap(mBitmap);
+        mValid = false;
+    }
+
+    void invalidate() {
+        mValid = false;
+    }
+
+    boolean isValid() {
+        return mValid;
+    }
+
+    /**
+     * Returns the canvas to draw the layer again with.  The layer is valid afterwards.
+     */
+    Canvas redraw() {
+        mValid = true;
+        return mCanvas;
+    }
+
+    /**
+     * Composites the layer onto the frame.
+     */
+    void draw(Canvas canvas) {
+        canvas.drawBitmap(mBitmap, 0, 0, null);
+    }
+
+    void release() {
+        if (null != mBitmap) {
+            mBitmap.recycle();
+            mBitmap = null;
+        }
+        mValid = false;
+    }
+}
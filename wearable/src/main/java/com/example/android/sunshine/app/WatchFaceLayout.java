@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+/**
+ * Placement of every element of the watch face, in every mode.  The dimensions for the watch's
+ * shape are loaded when the insets are known, and the table is computed again whenever the
+ * width of a text it depends on changes, so that drawing only looks positions up.
+ *
+ * Text positions are the start of their baseline, the icon and the forecast strip positions
+ * their top left corner.
+ */
+class WatchFaceLayout {
+    static final int MODE_INTERACTIVE = 0;
+    static final int MODE_AMBIENT = 1;
+    static final int MODE_MUTE = 2;
+    private static final int MODE_COUNT = 3;
+
+    static final int HOUR = 0;
+    static final int COLON = 1;
+    static final int MINUTE = 2;
+    static final int AM_PM = 3;
+    static final int DAY_OF_WEEK = 4;
+    static final int DATE = 5;
+    static final int ICON = 6;
+    static final int MAX_TEMP = 7;
+    static final int MIN_TEMP = 8;
+    static final int FORECAST = 9;
+    private static final int ELEMENT_COUNT = 10;
+
+    // How far above the temperature baseline the icon's top is, in pixels.
+    private static final float ICON_RISE = 50;
+    // How far the temperatures are raised in ambient mode, where they replace the icon.
+    private static final float AMBIENT_TEMPERATURE_RISE = 5;
+    // Gap between the icon and the temperatures, in colon widths.
+    private static final float ICON_GAP_COLONS = 1.5f;
+
+    private final float[][] mX = new float[MODE_COUNT][ELEMENT_COUNT];
+    private final float[][] mY = new float[MODE_COUNT][ELEMENT_COUNT];
+    private final boolean[][] mVisible = new boolean[MODE_COUNT][ELEMENT_COUNT];
+
+    private final int mWeatherIconSize;
+    private float mXOffsetTime;
+    private float mYOffsetTime;
+    private float mXOffsetDate;
+    private float mYOffsetDate;
+    private float mXOffsetTemperature;
+    private float mYOffsetTemperature;
+    private float mYOffsetForecast;
+    private float mTimeTextSize;
+    private float mDateTextSize;
+    private float mAmPmTextSize;
+    private float mTemperatureTextSize;
+
+    WatchFaceLayout(Resources resources) {
+        mWeatherIconSize = resources.getDimensionPixelSize(R.dimen.weather_icon_size);
+    }
+
+    /**
+     * Loads the offsets and text sizes, which have alternate values for round watches.
+     */
+    void load(Resources resources, boolean isRound) {
+        mXOffsetTime = resources.getDimensionPixelSize(isRound
+                ? R.dimen.x_offset_time_round : R.dimen.x_offset_time);
+        mYOffsetTime = resources.getDimensionPixelSize(isRound
+                ? R.dimen.y_offset_time_round : R.dimen.y_offset_time);
+        mXOffsetDate = resources.getDimensionPixelSize(isRound
+                ? R.dimen.x_offset_date_round : R.dimen.x_offset_date);
+        mYOffsetDate = resources.getDimensionPixelSize(isRound
+                ? R.dimen.y_offset_date_round : R.dimen.y_offset_date);
+        mXOffsetTemperature = resources.getDimensionPixelSize(isRound
+                ? R.dimen.x_offset_temperature_round : R.dimen.x_offset_temperature);
+        mYOffsetTemperature = resources.getDimensionPixelSize(isRound
+                ? R.dimen.y_offset_temperature_round : R.dimen.y_offset_temperature);
+        mYOffsetForecast = resources.getDimensionPixelSize(isRound
+                ? R.dimen.y_offset_forecast_round : R.dimen.y_offset_forecast);
+        mTimeTextSize = resources.getDimensionPixelSize(isRound
+                ? R.dimen.text_size_time_round : R.dimen.text_size_time);
+        mDateTextSize = resources.getDimensionPixelSize(R.dimen.text_size_date);
+        mAmPmTextSize = resources.getDimensionPixelSize(isRound
+                ? R.dimen.text_size_am_pm_round : R.dimen.text_size_am_pm);
+        mTemperatureTextSize = resources.getDimensionPixelSize(isRound
+                ? R.dimen.text_size_temperature_round : R.dimen.text_size_temperature);
+    }
+
+    /**
+     * Computes the placement table from the widths of the texts.
+     */
+    void place(float colonWidth, float hourWidth, float minuteWidth, float dayOfWeekWidth,
+               float maxTempWidth, boolean is24Hour) {
+        for (int mode = 0; mode < MODE_COUNT; mode++) {
+            boolean ambient = mode == MODE_AMBIENT;
+
+            // The time is at the same place in every mode, with AM/PM when it isn't interactive.
+            float x = mXOffsetTime;
+            set(mode, HOUR, x, mYOffsetTime, true);
+            x += hourWidth;
+            set(mode, COLON, x, mYOffsetTime, true);
+            x += colonWidth;
+            set(mode, MINUTE, x, mYOffsetTime, true);
+            x += minuteWidth + colonWidth;
+            set(mode, AM_PM, x, mYOffsetTime, mode != MODE_INTERACTIVE && !is24Hour);
+
+            // Ambient mode only shows the temperatures, under the time.
+            set(mode, DAY_OF_WEEK, mXOffsetDate, mYOffsetDate, !ambient);
+            set(mode, DATE, mXOffsetDate + dayOfWeekWidth, mYOffsetDate, !ambient);
+            set(mode, ICON, mXOffsetTemperature, mYOffsetTemperature - ICON_RISE, !ambient);
+            float y;
+            if (ambient) {
+                x = mXOffsetTime;
+                y = mYOffsetTemperature - AMBIENT_TEMPERATURE_RISE;
+            } else {
+                x = mXOffsetTemperature + mWeatherIconSize + ICON_GAP_COLONS * colonWidth;
+                y = mYOffsetTemperature;
+            }
+            set(mode, MAX_TEMP, x, y, true);
+            x += maxTempWidth + colonWidth;
+            set(mode, MIN_TEMP, x, y, true);
+            set(mode, FORECAST, mXOffsetTemperature, mYOffsetForecast, !ambient);
+        }
+    }
+
+    private void set(int mode, int element, float x, float y, boolean visible) {
+        mX[mode][element] = x;
+        mY[mode][element] = y;
+        mVisible[mode][element] = visible;
+    }
+
+    float getX(int mode, int element) {
+        return mX[mode][element];
+    }
+
+    float getY(int mode, int element) {
+        return mY[mode][element];
+    }
+
+    boolean isVisible(int mode, int element) {
+        return mVisible[mode][element];
+    }
+
+    /**
+     * Draws a text where it is placed in this mode, if it is visible in this mode.
+     */
+    void drawText(Canvas canvas, String text, int mode, int element, Paint paint) {
+        if (mVisible[mode][element]) {
+            canvas.drawText(text, mX[mode][element], mY[mode][element], paint);
+        }
+    }
+
+    int getWeatherIconSize() {
+        return mWeatherIconSize;
+    }
+
+    float getTimeTextSize() {
+        return mTimeTextSize;
+    }
+
+    float getDateTextSize() {
+        return mDateTextSize;
+    }
+
+    float getAmPmTextSize() {
+        return mAmPmTextSize;
+    }
+
+    float getTemperatureTextSize() {
+        return mTemperatureTextSize;
+    }
+}
@@ -0,0 +1,554 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.os.SystemClock;
+import android.text.format.DateFormat;
+import android.util.Log;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Draws the frames of the watch face.  The background, date and weather are cached in a layer
+ * per mode, which frames composite before drawing the time on top.  The engine forwards the
+ * watch's state to the renderer, and only asks it for frames.
+ */
+class WatchFaceRenderer {
+    // Log tag.
+    private static final String LOG_TAG = "SunshineWear";
+
+    // Typefaces used.
+    private static final Typeface TYPEFACE_ROBOTO =
+            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
+    private static final Typeface TYPEFACE_ROBOTO_CONDENSED =
+            Typeface.create("sans-serif-condensed", Typeface.NORMAL);
+
+    static final String COLON_STRING = ":";
+
+    // Alpha value for drawing time when in mute mode.
+    static final int MUTE_ALPHA = 100;
+
+    // Alpha value for drawing time when not in mute mode.
+    static final int NORMAL_ALPHA = 255;
+
+    private final Context mContext;
+    private final WatchFaceStats mStats = new WatchFaceStats();
+
+    // Paint objects.
+    private final Paint mBackgroundPaint;
+    private final Paint mDatePaint;
+    private final Paint mHourPaint;
+    private final Paint mMinutePaint;
+    private final Paint mAmPmPaint;
+    private final Paint mColonPaint;
+    private final Paint mMaxTempPaint;
+    private final Paint mMinTempPaint;
+    private final Paint mWeatherBitmapPaint;
+    private final Paint mForecastDayPaint;
+    private final Paint mForecastTempPaint;
+
+    // Cached layers with the background, date and weather, which only change a few times an
+    // hour.  Frames composite the layer of the current mode and draw the time on top.  The
+    // ambient layer is drawn with the ambient paints, without anti-aliasing on low-bit
+    // displays.
+    private final WatchFaceLayer mInteractiveLayer = new WatchFaceLayer();
+    private final WatchFaceLayer mAmbientLayer = new WatchFaceLayer();
+
+    // Color constants for various paint objects.
+    private final int mColorTextInteractive;
+    private final int mColorTextAmbient;
+    private final int mColorTextColon;
+    private final int mColorTextAmPm;
+    private final int mColorTextDate;
+    private final int mColorTextMinTemperature;
+    private final int mColorBackgroundInteractive;
+    private final int mColorBackgroundAmbient;
+
+    // Where every element is drawn.
+    private final WatchFaceLayout mLayout;
+
+    // The days after today.
+    private final ForecastStrip mForecastStrip;
+
+    // AM/PM strings.
+    private final String mAmString;
+    private final String mPmString;
+    private final String mTemperatureFormat;
+
+    // State of the watch, forwarded by the engine.
+    private boolean mAmbient;
+    private boolean mLowBitAmbient;
+    private boolean mMute;
+    private boolean mBlinkColons;
+    private boolean mPeekCardVisible;
+
+    // Weather icon bitmap, max and min temperatures received from the handheld.
+    private boolean mHasWeather;
+    private int mMaxTemp;
+    private int mMinTemp;
+    private Bitmap mWeatherBitmap;
+    // When the watch face became visible, until the weather is first drawn after that, or
+    // -1 when the weather has been drawn.
+    private long mVisibleSinceMillis = -1;
+
+    private float mColonWidth;
+
+    // Text drawn by draw(), with its measurements.  It is only formatted and measured when the
+    // minute, the weather data or the configuration changes, so that frames don't allocate.
+    // Minute since the epoch the time and date text were formatted for, or -1 to reformat.
+    private long mTextMinute = -1;
+    private boolean mIs24Hour;
+    private String mHourString;
+    private float mHourWidth;
+    private String mMinuteString;
+    private float mMinuteWidth;
+    private String mAmPmString;
+    private String mDayOfWeekString;
+    private float mDayOfWeekWidth;
+    private String mDateString;
+    private String mMaxTempString;
+    private float mMaxTempWidth;
+    private String mMinTempString;
+    private final Calendar mCalendar = Calendar.getInstance();
+    private final Date mDate = new Date();
+    private SimpleDateFormat mDayOfWeekFormat;
+    private java.text.DateFormat mDateFormat;
+
+    WatchFaceRenderer(Context context) {
+        mContext = context;
+
+        // Get strings from resources.
+        Resources resources = context.getResources();
+        mAmString = resources.getString(R.string.digital_am);
+        mPmString = resources.getString(R.string.digital_pm);
+        mTemperatureFormat = resources.getString(R.string.format_temperature);
+
+        // Get colors from resources.
+        mColorTextInteractive = resources.getColor(R.color.color_text_interactive);
+        mColorTextAmbient = resources.getColor(R.color.color_text_ambient);
+        mColorTextColon = resources.getColor(R.color.color_text_colon);
+        mColorTextAmPm = resources.getColor(R.color.color_text_am_pm);
+        mColorTextDate = resources.getColor(R.color.color_text_date);
+        mColorTextMinTemperature = resources.getColor(R.color.color_text_min_temperature);
+        mColorBackgroundInteractive = resources.getColor(R.color.color_background_interactive);
+        mColorBackgroundAmbient = resources.getColor(R.color.color_background_ambient);
+
+        // Create paint objects and assign colors.
+        mBackgroundPaint = new Paint();
+        mBackgroundPaint.setColor(mColorBackgroundInteractive);
+        mHourPaint = createTextPaint(mColorTextInteractive);
+        mMinutePaint = createTextPaint(mColorTextInteractive, TYPEFACE_ROBOTO_CONDENSED);
+        mAmPmPaint = createTextPaint(mColorTextAmPm);
+        mColonPaint = createTextPaint(mColorTextColon);
+        mDatePaint = createTextPaint(mColorTextDate);
+        mMaxTempPaint = createTextPaint(mColorTextInteractive);
+        mMinTempPaint = createTextPaint(mColorTextMinTemperature, TYPEFACE_ROBOTO_CONDENSED);
+        mWeatherBitmapPaint = new Paint();
+        float forecastTextSize = resources.getDimensionPixelSize(R.dimen.text_size_forecast);
+        mForecastDayPaint = createTextPaint(mColorTextDate);
+        mForecastDayPaint.setTextAlign(Paint.Align.CENTER);
+        mForecastDayPaint.setTextSize(forecastTextSize);
+        mForecastTempPaint = createTextPaint(mColorTextInteractive, TYPEFACE_ROBOTO_CONDENSED);
+        mForecastTempPaint.setTextAlign(Paint.Align.CENTER);
+        mForecastTempPaint.setTextSize(forecastTextSize);
+        mForecastStrip = new ForecastStrip(
+                resources.getDimensionPixelSize(R.dimen.forecast_tile_width),
+                resources.getDimensionPixelSize(R.dimen.forecast_tile_height),
+                mTemperatureFormat);
+
+        mLayout = new WatchFaceLayout(resources);
+        initFormats();
+        updateTemperatureText();
+    }
+
+    private Paint createTextPaint(int defaultInteractiveColor) {
+        return createTextPaint(defaultInteractiveColor, TYPEFACE_ROBOTO);
+    }
+
+    private Paint createTextPaint(int defaultInteractiveColor, Typeface typeface) {
+        Paint paint = new Paint();
+        paint.setColor(defaultInteractiveColor);
+        paint.setTypeface(typeface);
+        paint.setAntiAlias(true);
+        return paint;
+    }
+
+    WatchFaceLayout getLayout() {
+        return mLayout;
+    }
+
+    ForecastStrip getForecastStrip() {
+        return mForecastStrip;
+    }
+
+    WatchFaceStats getStats() {
+        return mStats;
+    }
+
+    /**
+     * Reads the time zone and date formats again, in case they changed.
+     */
+    void updateFormats() {
+        mCalendar.setTimeZone(TimeZone.getDefault());
+        initFormats();
+        invalidateText();
+    }
+
+    private void initFormats() {
+        mDayOfWeekFormat = new SimpleDateFormat("EEEE", Locale.getDefault());
+        mDayOfWeekFormat.setCalendar(mCalendar);
+        mDateFormat = DateFormat.getDateFormat(mContext);
+        mDateFormat.setCalendar(mCalendar);
+    }
+
+    /**
+     * Loads the dimensions of the watch's shape, and places every element again.
+     */
+    void setShape(boolean isRound) {
+        // Load resources that have alternate values for round watches.
+        mLayout.load(mContext.getResources(), isRound);
+        float timeTextSize = mLayout.getTimeTextSize();
+        float dateTextSize = mLayout.getDateTextSize();
+        float amPmTextSize = mLayout.getAmPmTextSize();
+        float temperatureTextSize = mLayout.getTemperatureTextSize();
+
+        // Set the text sizes to the paint objects.
+        mHourPaint.setTextSize(timeTextSize);
+        mMinutePaint.setTextSize(timeTextSize);
+        mColonPaint.setTextSize(timeTextSize);
+        mAmPmPaint.setTextSize(amPmTextSize);
+        mDatePaint.setTextSize(dateTextSize);
+        mMaxTempPaint.setTextSize(temperatureTextSize);
+        mMinTempPaint.setTextSize(temperatureTextSize);
+
+        // Get the colon width.
+        mColonWidth = mColonPaint.measureText(COLON_STRING);
+
+        // The text sizes changed, so measure the text and place it again.
+        invalidateText();
+        updateTemperatureText();
+    }
+
+    void setLowBitAmbient(boolean lowBitAmbient) {
+        mLowBitAmbient = lowBitAmbient;
+        mAmbientLayer.invalidate();
+    }
+
+    void setAmbient(boolean ambient) {
+        mAmbient = ambient;
+
+        // Adjust paint colors based on interactive or ambient mode.
+        adjustPaintColorToCurrentMode(mBackgroundPaint, mColorBackgroundInteractive,
+                mColorBackgroundAmbient);
+        adjustPaintColorToCurrentMode(mHourPaint, mColorTextInteractive, mColorTextAmbient);
+        adjustPaintColorToCurrentMode(mMinutePaint, mColorTextInteractive, mColorTextAmbient);
+        adjustPaintColorToCurrentMode(mColonPaint, mColorTextColon, mColorTextAmbient);
+        adjustPaintColorToCurrentMode(mAmPmPaint, mColorTextAmPm, mColorTextAmbient);
+        adjustPaintColorToCurrentMode(mDatePaint, mColorTextDate, mColorTextAmbient);
+        adjustPaintColorToCurrentMode(mMaxTempPaint, mColorTextInteractive, mColorTextAmbient);
+        adjustPaintColorToCurrentMode(mMinTempPaint, mColorTextMinTemperature,
+                mColorTextAmbient);
+
+        // Adjust anti alias.
+        if (mLowBitAmbient) {
+            boolean antiAlias = !ambient;
+            mHourPaint.setAntiAlias(antiAlias);
+            mMinutePaint.setAntiAlias(antiAlias);
+            mColonPaint.setAntiAlias(antiAlias);
+            mAmPmPaint.setAntiAlias(antiAlias);
+            mDatePaint.setAntiAlias(antiAlias);
+            mMaxTempPaint.setAntiAlias(antiAlias);
+            mMinTempPaint.setAntiAlias(antiAlias);
+        }
+    }
+
+    private void adjustPaintColorToCurrentMode(Paint paint, int interactiveColor,
+                                               int ambientColor) {
+        paint.setColor(mAmbient ? ambientColor : interactiveColor);
+    }
+
+    void setMute(boolean mute) {
+        if (mMute == mute) {
+            return;
+        }
+        mMute = mute;
+        int alpha = mute ? MUTE_ALPHA : NORMAL_ALPHA;
+        mHourPaint.setAlpha(alpha);
+        mMinutePaint.setAlpha(alpha);
+        mAmPmPaint.setAlpha(alpha);
+        mColonPaint.setAlpha(alpha);
+        mDatePaint.setAlpha(alpha);
+        mMaxTempPaint.setAlpha(alpha);
+        mMinTempPaint.setAlpha(alpha);
+        mForecastDayPaint.setAlpha(alpha);
+        mForecastTempPaint.setAlpha(alpha);
+        mForecastStrip.invalidate();
+        invalidateLayers();
+    }
+
+    /**
+     * Sets whether the colons blink in interactive mode.  They don't in low-power mode, so the
+     * watch face only wakes up once a minute.
+     */
+    void setBlinkColons(boolean blinkColons) {
+        mBlinkColons = blinkColons;
+    }
+
+    /**
+     * Hides the date and weather while a peek card is shown.  Returns whether that changed.
+     */
+    boolean setPeekCardVisible(boolean peekCardVisible) {
+        if (peekCardVisible == mPeekCardVisible) {
+            return false;
+        }
+        mPeekCardVisible = peekCardVisible;
+        invalidateLayers();
+        return true;
+    }
+
+    /**
+     * Sets the temperatures received from the handheld, which shows the weather.
+     */
+    void setTemperatures(int maxTemp, int minTemp) {
+        mHasWeather = true;
+        mMaxTemp = maxTemp;
+        mMinTemp = minTemp;
+        updateTemperatureText();
+    }
+
+    /**
+     * Sets the weather icon, which the caller keeps ownership of.
+     */
+    void setWeatherBitmap(Bitmap weatherBitmap) {
+        mWeatherBitmap = weatherBitmap;
+        invalidateLayers();
+    }
+
+    /**
+     * Starts measuring how long the weather takes to be drawn, once the watch face is visible.
+     */
+    void onVisible() {
+        mVisibleSinceMillis = SystemClock.elapsedRealtime();
+    }
+
+    private String formatTwoDigitNumber(int hour) {
+        return String.format("%02d", hour);
+    }
+
+    private String getAmPmString(int amPm) {
+        return amPm == Calendar.AM ? mAmString : mPmString;
+    }
+
+    /**
+     * Forces the time and date text to be formatted and measured again on the next frame.
+     */
+    void invalidateText() {
+        mTextMinute = -1;
+        mDayOfWeekString = null;
+    }
+
+    /**
+     * Formats and measures the time and date text for the given time.
+     */
+    private void updateTimeText(long now) {
+        mIs24Hour = DateFormat.is24HourFormat(mContext);
+        if (mIs24Hour) {
+            mHourString = formatTwoDigitNumber(mCalendar.get(Calendar.HOUR_OF_DAY));
+        } else {
+            int hour = mCalendar.get(Calendar.HOUR);
+            if (hour == 0) {
+                hour = 12;
+            }
+            mHourString = String.valueOf(hour);
+        }
+        mHourWidth = mHourPaint.measureText(mHourString);
+        mMinuteString = formatTwoDigitNumber(mCalendar.get(Calendar.MINUTE));
+        mMinuteWidth = mMinutePaint.measureText(mMinuteString);
+        mAmPmString = getAmPmString(mCalendar.get(Calendar.AM_PM));
+
+        String dayOfWeekString = mDayOfWeekFormat.format(mDate);
+        String dateString = ", " + mDateFormat.format(mDate);
+        if (!dayOfWeekString.equals(mDayOfWeekString) || !dateString.equals(mDateString)) {
+            mDayOfWeekString = dayOfWeekString;
+            mDayOfWeekWidth = mDatePaint.measureText(mDayOfWeekString);
+            mDateString = dateString;
+            // The forecast starts tomorrow, and today's tile is dropped after midnight.
+            mForecastStrip.setFirstDay(getStartOfTomorrow());
+            mInteractiveLayer.invalidate();
+        }
+        mTextMinute = TimeUnit.MILLISECONDS.toMinutes(now);
+        placeText();
+    }
+
+    /**
+     * Returns the time tomorrow starts at, after the time in {@link #mCalendar}.
+     */
+    private long getStartOfTomorrow() {
+        Calendar tomorrow = (Calendar) mCalendar.clone();
+        tomorrow.set(Calendar.HOUR_OF_DAY, 0);
+        tomorrow.set(Calendar.MINUTE, 0);
+        tomorrow.set(Calendar.SECOND, 0);
+        tomorrow.set(Calendar.MILLISECOND, 0);
+        tomorrow.add(Calendar.DAY_OF_MONTH, 1);
+        return tomorrow.getTimeInMillis();
+    }
+
+    /**
+     * Formats and measures the temperatures received from the handheld.
+     */
+    private void updateTemperatureText() {
+        mMaxTempString = String.format(mTemperatureFormat, String.valueOf(mMaxTemp));
+        mMaxTempWidth = mMaxTempPaint.measureText(mMaxTempString);
+        mMinTempString = String.format(mTemperatureFormat, String.valueOf(mMinTemp));
+        placeText();
+        invalidateLayers();
+    }
+
+    /**
+     * Places every element again, after the width of a text changed.
+     */
+    private void placeText() {
+        mLayout.place(mColonWidth, mHourWidth, mMinuteWidth, mDayOfWeekWidth, mMaxTempWidth,
+                mIs24Hour);
+    }
+
+    /**
+     * Returns the mode to look the placement of elements up in.
+     */
+    private int getLayoutMode() {
+        if (mAmbient) {
+            return WatchFaceLayout.MODE_AMBIENT;
+        }
+        return mMute ? WatchFaceLayout.MODE_MUTE : WatchFaceLayout.MODE_INTERACTIVE;
+    }
+
+    void invalidateLayers() {
+        mInteractiveLayer.invalidate();
+        mAmbientLayer.invalidate();
+    }
+
+    /**
+     * Draws the frame for the given time.
+     */
+    void draw(Canvas canvas, Rect bounds, long now) {
+        long startNanos = System.nanoTime();
+        if (TimeUnit.MILLISECONDS.toMinutes(now) != mTextMinute) {
+            mCalendar.setTimeInMillis(now);
+            mDate.setTime(now);
+            updateTimeText(now);
+        }
+
+        // Composite the background, date and weather, drawing them again if they changed.
+        int mode = getLayoutMode();
+        WatchFaceLayer layer = mAmbient ? mAmbientLayer : mInteractiveLayer;
+        layer.setSize(bounds.width(), bounds.height());
+        if (!layer.isValid()) {
+            drawStaticLayer(layer.redraw(), bounds, mode);
+        }
+        layer.draw(canvas);
+
+        // Draw the hours.
+        mLayout.drawText(canvas, mHourString, mode, WatchFaceLayout.HOUR, mHourPaint);
+
+        // In ambient and low-power modes, always draw the first colon. Otherwise, draw the
+        // first colon for the first half of each second, so the colons blink on when the time
+        // updates.
+        if (mAmbient || !mBlinkColons || (now % 1000) < 500) {
+            mLayout.drawText(canvas, COLON_STRING, mode, WatchFaceLayout.COLON, mColonPaint);
+        }
+
+        // Draw the minutes.
+        mLayout.drawText(canvas, mMinuteString, mode, WatchFaceLayout.MINUTE, mMinutePaint);
+
+        // In ambient and mute modes, draw AM/PM in 12-hour format.
+        mLayout.drawText(canvas, mAmPmString, mode, WatchFaceLayout.AM_PM, mAmPmPaint);
+
+        mStats.onFrame(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Draws the background, and the date and weather if there is no peek card, in the
+     * current mode.
+     */
+    private void drawStaticLayer(Canvas canvas, Rect bounds, int mode) {
+        // Draw the background.
+        canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
+
+        // Only render the day of week, date, weather icon, max and min temperatures if there
+        // is no peek card, so they do not bleed into each other.
+        if (mPeekCardVisible) {
+            return;
+        }
+
+        // Day of week and date, in interactive mode.
+        mLayout.drawText(canvas, mDayOfWeekString, mode, WatchFaceLayout.DAY_OF_WEEK,
+                mDatePaint);
+        mLayout.drawText(canvas, mDateString, mode, WatchFaceLayout.DATE, mDatePaint);
+
+        // Show weather data only if weather update has been received from handheld.
+        if (!mHasWeather) {
+            return;
+        }
+
+        // Weather icon, which may still be loading, in interactive mode.
+        if (null != mWeatherBitmap && mLayout.isVisible(mode, WatchFaceLayout.ICON)) {
+            canvas.drawBitmap(mWeatherBitmap, mLayout.getX(mode, WatchFaceLayout.ICON),
+                    mLayout.getY(mode, WatchFaceLayout.ICON), mWeatherBitmapPaint);
+        }
+
+        // Max and min temp, in every mode.
+        mLayout.drawText(canvas, mMaxTempString, mode, WatchFaceLayout.MAX_TEMP, mMaxTempPaint);
+        mLayout.drawText(canvas, mMinTempString, mode, WatchFaceLayout.MIN_TEMP, mMinTempPaint);
+
+        // Upcoming days, in interactive mode.
+        if (mLayout.isVisible(mode, WatchFaceLayout.FORECAST)) {
+            mForecastStrip.draw(canvas, mLayout.getX(mode, WatchFaceLayout.FORECAST),
+                    mLayout.getY(mode, WatchFaceLayout.FORECAST),
+                    mForecastDayPaint, mForecastTempPaint);
+
+            if (null != mWeatherBitmap && mVisibleSinceMillis >= 0) {
+                if (Log.isLoggable(LOG_TAG, Log.DEBUG)) {
+                    Log.d(LOG_TAG, "Weather drawn "
+                            + (SystemClock.elapsedRealtime() - mVisibleSinceMillis)
+                            + "ms after becoming visible");
+                }
+                mVisibleSinceMillis = -1;
+            }
+        }
+    }
+
+    /**
+     * Releases the layers and the forecast tiles.  The weather icon belongs to the caller.
+     */
+    void release() {
+        mInteractiveLayer.release();
+        mAmbientLayer.release();
+        mForecastStrip.release();
+    }
+}
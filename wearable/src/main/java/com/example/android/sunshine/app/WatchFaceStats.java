@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.os.SystemClock;
+
+import java.io.PrintWriter;
+
+/**
+ * Counts the work the watch face does while it is visible: timer wake-ups, frames drawn and time
+ * spent drawing them.  The counts are dumped with
+ * {@code adb shell dumpsys activity service SunshineWatchFaceService}, to compare the energy cost
+ * of the update modes.
+ */
+class WatchFaceStats {
+    private long mSinceMillis = SystemClock.elapsedRealtime();
+    private int mWakeUps;
+    private int mFrames;
+    private long mDrawNanos;
+    private long mMaxDrawNanos;
+
+    synchronized void onWakeUp() {
+        mWakeUps++;
+    }
+
+    synchronized void onFrame(long drawNanos) {
+        mFrames++;
+        mDrawNanos += drawNanos;
+        if (drawNanos > mMaxDrawNanos) {
+            mMaxDrawNanos = drawNanos;
+        }
+    }
+
+    synchronized int getFrames() {
+        return mFrames;
+    }
+
+    synchronized long getAverageDrawNanos() {
+        return mFrames == 0 ? 0 : mDrawNanos / mFrames;
+    }
+
+    synchronized long getMaxDrawNanos() {
+        return mMaxDrawNanos;
+    }
+
+    synchronized void reset() {
+        mSinceMillis = SystemClock.elapsedRealtime();
+        mWakeUps = 0;
+        mFrames = 0;
+        mDrawNanos = 0;
+        mMaxDrawNanos = 0;
+    }
+
+    synchronized void dump(PrintWriter writer, String prefix) {
+        long minutes = Math.max(1, (SystemClock.elapsedRealtime() - mSinceMillis) / 60000);
+        writer.println(prefix + "Over " + minutes + " min:");
+        writer.println(prefix + "  wake-ups: " + mWakeUps + " (" + mWakeUps / minutes + "/min)");
+        writer.println(prefix + "  frames: " + mFrames + " (" + mFrames / minutes + "/min)");
+        writer.println(prefix + "  draw time: " + mDrawNanos / 1000000 + "ms total, "
+                + getAverageDrawNanos() / 1000 + "us average, "
+                + mMaxDrawNanos / 1000 + "us max");
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Persistent store of the weather icons received from the handheld, keyed by the hash the
+ * handheld computed from their content.  An icon is only transferred the first time it is used,
+ * and survives restarts of the watch face.
+ */
+class WeatherIconStore {
+    private static final String LOG_TAG = "SunshineWear";
+
+    private static final String ICON_DIRECTORY = "weather_icons";
+
+    private final File mDirectory;
+
+    WeatherIconStore(Context context) {
+        mDirectory = new File(context.getFilesDir(), ICON_DIRECTORY);
+    }
+
+    boolean contains(String iconHash) {
+        return getFile(iconHash).exists();
+    }
+
+    /**
+     * Stores the icon with the given hash, read from the stream.  The stream is closed.
+     */
+    boolean save(String iconHash, InputStream in) {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.e(LOG_TAG, "Can't create " + mDirectory);
+            return false;
+        }
+        // Write to a temporary file first, so that a partial icon is never used
+        File file = getFile(iconHash);
+        File partialFile = new File(mDirectory, file.getName() + ".tmp");
+        OutputStream out = null;
+        long bytes = 0;
+        try {
+            out = new FileOutputStream(partialFile);
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+                bytes += count;
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error storing icon " + iconHash, e);
+            return false;
+        } finally {
+            close(in);
+            close(out);
+        }
+        if (!partialFile.renameTo(file)) {
+            partialFile.delete();
+            return false;
+        }
+        Log.d(LOG_TAG, "Stored icon " + iconHash + ": " + bytes + " bytes");
+        return true;
+    }
+
+    /**
+     * Decodes the icon with the given hash, scaled down to fit in the given size.
+     *
+     * @param reuse a bitmap that is no longer used, whose memory is reused if possible, or null
+     * @return the icon, or null if it isn't stored
+     */
+    Bitmap decode(String iconHash, int targetSize, Bitmap reuse) {
+        long startNanos = System.nanoTime();
+        String path = getFile(iconHash).getPath();
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        int size = Math.max(options.outWidth, options.outHeight);
+        if (size <= 0) {
+            return null;
+        }
+
+        // Sample down to the nearest power of two, then scale the rest of the way.
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = 1;
+        while (size / (options.inSampleSize * 2) >= targetSize) {
+            options.inSampleSize *= 2;
+        }
+        if (size / options.inSampleSize > targetSize) {
+            options.inScaled = true;
+            options.inDensity = size / options.inSampleSize;
+            options.inTargetDensity = targetSize;
+        }
+        options.inMutable = true;
+        options.inBitmap = reuse;
+
+        Bitmap icon;
+        try {
+            icon = BitmapFactory.decodeFile(path, options);
+        } catch (IllegalArgumentException e) {
+            // The bitmap to reuse is too small
+            options.inBitmap = null;
+            icon = BitmapFactory.decodeFile(path, options);
+        }
+        Log.d(LOG_TAG, "Decoded icon " + iconHash + " in "
+                + (System.nanoTime() - startNanos) / 1000 + "us, sample size "
+                + options.inSampleSize + (null != reuse && icon == reuse ? ", reused" : ""));
+        return icon;
+    }
+
+    private File getFile(String iconHash) {
+        return new File(mDirectory, iconHash + ".png");
+    }
+
+    private static void close(Closeable closeable) {
+        if (null != closeable) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}